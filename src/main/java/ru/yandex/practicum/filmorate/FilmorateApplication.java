@@ -2,12 +2,21 @@ package ru.yandex.practicum.filmorate;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Clock;
 
 @SpringBootApplication
+@EnableScheduling
 public class FilmorateApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(FilmorateApplication.class, args);
     }
 
-}
\ No newline at end of file
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+    private final FilmCache filmCache;
+
+    public CacheController(FilmCache filmCache) {
+        this.filmCache = filmCache;
+    }
+
+    @GetMapping("/films")
+    public CacheStats getFilmCacheStats() {
+        return filmCache.getStats();
+    }
+}
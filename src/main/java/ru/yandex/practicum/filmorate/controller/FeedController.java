@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import javax.validation.constraints.Positive;
+import java.util.List;
+
+@RestController
+@RequestMapping("/users")
+public class FeedController {
+    private final FilmService filmService;
+
+    public FeedController(FilmService filmService) {
+        this.filmService = filmService;
+    }
+
+    @GetMapping("/{id}/feed")
+    public List<Film> getFeed(@PathVariable @Positive Long id,
+                              @RequestParam(defaultValue = "20") Integer limit) {
+        return filmService.getFeed(id, limit);
+    }
+}
@@ -3,6 +3,8 @@ package ru.yandex.practicum.filmorate.controller;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
@@ -25,6 +27,11 @@ public class FilmController extends CrudController<Film> {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    public List<FilmImportResult> createAll(@RequestBody List<Film> films) {
+        return filmService.createAll(films);
+    }
+
     @Override
     @PutMapping
     public Film update(@RequestBody @Valid Film film) {
@@ -37,6 +44,11 @@ public class FilmController extends CrudController<Film> {
         return filmService.get();
     }
 
+    @GetMapping(params = "limit")
+    public Page<Film> getPage(@RequestParam(required = false) Long after, @RequestParam Integer limit) {
+        return filmService.getPage(after, limit);
+    }
+
     @Override
     @GetMapping("/{id}")
     public Film get(@PathVariable Long id) {
@@ -54,7 +66,21 @@ public class FilmController extends CrudController<Film> {
     }
 
     @GetMapping("/popular")
-    public List<Film> getMostLikedFilms(@RequestParam(defaultValue = "10") @Positive Integer count) {
-        return filmService.getMostLikedFilms(count);
+    public List<Film> getMostLikedFilms(@RequestParam(defaultValue = "10") @Positive Integer count,
+                                        @RequestParam(required = false) @Positive Integer genreId,
+                                        @RequestParam(required = false) @Positive Integer mpaId,
+                                        @RequestParam(required = false) @Positive Integer year) {
+        return filmService.getMostLikedFilms(count, genreId, mpaId, year);
+    }
+
+    @GetMapping("/trending")
+    public List<Film> getTrending(@RequestParam(defaultValue = "24h") String window,
+                                  @RequestParam(defaultValue = "10") Integer limit) {
+        return filmService.getTrending(window, limit);
+    }
+
+    @GetMapping("/{id}/also-liked")
+    public List<Film> getAlsoLiked(@PathVariable @Positive Long id, @RequestParam(defaultValue = "10") Integer limit) {
+        return filmService.getAlsoLiked(id, limit);
     }
 }
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@RestController
+@RequestMapping("/films/export")
+public class FilmExportController {
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+
+    public FilmExportController(FilmService filmService, ObjectMapper objectMapper) {
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Выгружает весь каталог в формате NDJSON: каждый фильм пишется в ответ отдельной строкой сразу после
+     * чтения из БД, поэтому расход памяти не зависит от размера каталога.
+     */
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = outputStream -> filmService.export(film -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(film));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(body);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import javax.validation.constraints.Positive;
+import java.util.List;
+
+@RestController
+@RequestMapping("/users")
+public class RecommendationController {
+    private final FilmService filmService;
+
+    public RecommendationController(FilmService filmService) {
+        this.filmService = filmService;
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable @Positive Long id,
+                                         @RequestParam(defaultValue = "10") Integer limit) {
+        return filmService.getRecommendations(id, limit);
+    }
+}
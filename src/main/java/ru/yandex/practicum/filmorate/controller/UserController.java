@@ -2,12 +2,15 @@ package ru.yandex.practicum.filmorate.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Distance;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
@@ -38,6 +41,11 @@ public class UserController extends CrudController<User> {
         return userService.get();
     }
 
+    @GetMapping(params = "limit")
+    public Page<User> getPage(@RequestParam(required = false) Long after, @RequestParam Integer limit) {
+        return userService.getPage(after, limit);
+    }
+
     @Override
     @GetMapping("/{id}")
     public User get(@PathVariable Long id) {
@@ -63,4 +71,22 @@ public class UserController extends CrudController<User> {
     public List<User> getCommonFriends(@PathVariable @Positive Long id, @PathVariable @Positive Long otherId) {
         return userService.getCommonFriends(id, otherId);
     }
+
+    @GetMapping("/{id}/suggestions")
+    public List<User> getSuggestions(@PathVariable @Positive Long id,
+                                     @RequestParam(defaultValue = "10") Integer limit) {
+        return userService.getSuggestions(id, limit);
+    }
+
+    @PostMapping("/{id}/mutual-counts")
+    public Map<Long, Integer> getMutualFriendCounts(@PathVariable @Positive Long id, @RequestBody List<Long> otherIds) {
+        return userService.getMutualFriendCounts(id, otherIds);
+    }
+
+    @GetMapping("/{id}/distance/{otherId}")
+    public Distance getDistance(@PathVariable @Positive Long id, @PathVariable @Positive Long otherId,
+                                @RequestParam(defaultValue = "6") Integer maxDepth,
+                                @RequestParam(defaultValue = "false") boolean path) {
+        return userService.getDistance(id, otherId, maxDepth, path);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CacheStats {
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+    private int maxSize;
+}
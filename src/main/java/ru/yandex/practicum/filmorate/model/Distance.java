@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Число рукопожатий между двумя пользователями и, если запрошен, сам путь (id от userId до otherId).
+ */
+@Data
+@AllArgsConstructor
+public class Distance {
+    private Long userId;
+    private Long otherId;
+    private int distance;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Long> path;
+}
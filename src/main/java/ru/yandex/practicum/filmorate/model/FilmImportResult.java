@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Результат импорта одного фильма из пакета: index - позиция фильма во входном списке,
+ * id - присвоенный фильму id (null, если фильм не добавлен), error - причина отказа.
+ */
+@Data
+@AllArgsConstructor
+public class FilmImportResult {
+    private int index;
+    private Long id;
+    private String error;
+
+    public static FilmImportResult created(int index, Long id) {
+        return new FilmImportResult(index, id, null);
+    }
+
+    public static FilmImportResult rejected(int index, String error) {
+        return new FilmImportResult(index, null, error);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@AllArgsConstructor
+public class Page<T> {
+    private List<T> items;
+    private Long nextCursor;
+
+    /**
+     * Собирает страницу из выборки, запрошенной с запасом в один элемент: если запас пришел из БД,
+     * значит после страницы есть еще данные, и курсором следующей страницы становится id последнего элемента.
+     */
+    public static <T> Page<T> of(List<T> itemsWithLookahead, int limit, Function<T, Long> idExtractor) {
+        if (itemsWithLookahead.size() <= limit) {
+            return new Page<>(itemsWithLookahead, null);
+        }
+
+        List<T> items = itemsWithLookahead.subList(0, limit);
+        return new Page<>(items, idExtractor.apply(items.get(limit - 1)));
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -26,7 +27,9 @@ public class User {
     @NotNull
     @PastOrPresent
     private LocalDate birthday;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Long> friendsIds = new HashSet<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Long> likedFilmsIds = new HashSet<>();
 
     public void addFriend(long friendId) {
@@ -6,27 +6,34 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.TrendingWindow;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.validation.Validation;
+import javax.validation.Validator;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class FilmService {
     private static final int MAX_LENGTH = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_IMPORT_SIZE = 10_000;
+    private static final int MAX_ALSO_LIKED = 100;
+    private static final int MAX_RECOMMENDATIONS = 100;
+    private static final int MAX_FEED_SIZE = 100;
+    private static final int MAX_TRENDING = 100;
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
-    private final Comparator<Film> likeCountComparator = (o1, o2) -> {
-        if (o1.getAllLikesCount() < o2.getAllLikesCount()) {
-            return 1;
-        }
-        return -1;
-    };
 
     public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
                        @Qualifier("userDbStorage") UserStorage userStorage) {
@@ -42,6 +49,40 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    /**
+     * Проверяет каждый фильм по тем же правилам, что и при добавлении по одному, и передает корректные фильмы
+     * в хранилище одним пакетом. Результаты возвращаются в порядке входного списка.
+     */
+    public List<FilmImportResult> createAll(List<Film> films) {
+        if (films == null || films.isEmpty() || films.size() > MAX_IMPORT_SIZE) {
+            throw new ValidationException("В пакете должно быть от 1 до " + MAX_IMPORT_SIZE + " фильмов!");
+        }
+        log.info("Пакетное добавление {} фильмов", films.size());
+
+        List<FilmImportResult> results = new ArrayList<>(films.size());
+        List<Film> validFilms = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            if (film == null || !VALIDATOR.validate(film).isEmpty() || !areFilmParamsCorrect(film)) {
+                results.add(FilmImportResult.rejected(i, "Введены некорректные параметры фильма!"));
+            } else {
+                results.add(null);
+                validFilms.add(film);
+                validIndexes.add(i);
+            }
+        }
+
+        if (!validFilms.isEmpty()) {
+            for (FilmImportResult result : filmStorage.createAll(validFilms)) {
+                int index = validIndexes.get(result.getIndex());
+                result.setIndex(index);
+                results.set(index, result);
+            }
+        }
+        return results;
+    }
+
     public Film update(Film film) {
         if (!doesFilmExist(film.getId())) {
             throw new NoSuitableUnitException("Фильм с указанным id не существует!");
@@ -58,6 +99,21 @@ public class FilmService {
         return filmStorage.get(id);
     }
 
+    public Page<Film> getPage(Long after, Integer limit) {
+        if (limit == null || limit <= 0) {
+            throw new ValidationException("Размер страницы должен быть положительным!");
+        }
+
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        List<Film> films = filmStorage.get(after == null ? 0 : after, pageSize + 1);
+        return Page.of(films, pageSize, Film::getId);
+    }
+
+    public void export(Consumer<Film> consumer) {
+        log.info("Выгрузка каталога фильмов");
+        filmStorage.export(consumer);
+    }
+
     public Film putLike(Long id, Long userId) {
         log.info("Фильму с id = {} ставит лайк пользователь с id = {}", id, userId);
         if (!doesFilmExist(id) || !doesUserExist(userId)) {
@@ -77,20 +133,71 @@ public class FilmService {
     }
 
     public List<Film> getMostLikedFilms(Integer listSize) {
-        log.info("Отображение {} фильмов с наибольшим числом лайков", listSize);
-        List<Film> sortedListByLikesCount = new ArrayList<>();
-        sortedListByLikesCount.addAll(filmStorage.getValues().values());
-        Collections.sort(sortedListByLikesCount, likeCountComparator);
+        return getMostLikedFilms(listSize, null, null, null);
+    }
 
-        if (listSize == 1) {
-            return List.of(sortedListByLikesCount.get(0));
+    public List<Film> getMostLikedFilms(Integer listSize, Integer genreId, Integer mpaId, Integer year) {
+        log.info("Отображение {} фильмов с наибольшим числом лайков: жанр {}, рейтинг {}, год {}",
+                listSize, genreId, mpaId, year);
+        return genreId == null && mpaId == null && year == null
+                ? filmStorage.getPopular(listSize)
+                : filmStorage.getPopular(listSize, genreId, mpaId, year);
+    }
+
+    public List<Film> getAlsoLiked(Long id, Integer limit) {
+        log.info("Получение {} фильмов, которые лайкают вместе с фильмом с id = {}", limit, id);
+        if (limit == null || limit <= 0 || limit > MAX_ALSO_LIKED) {
+            throw new ValidationException("Количество фильмов должно быть от 1 до " + MAX_ALSO_LIKED + "!");
         }
-        if (sortedListByLikesCount.size() < listSize) {
-            return sortedListByLikesCount;
-        } else {
-            List<Film> selectedFilms = sortedListByLikesCount.subList(0, listSize - 1);
-            return selectedFilms;
+        if (!doesFilmExist(id)) {
+            throw new NoSuitableUnitException("Фильм с указанным id не существует!");
         }
+
+        return getFilms(filmStorage.getAlsoLikedIds(id, limit));
+    }
+
+    public List<Film> getRecommendations(Long userId, Integer limit) {
+        log.info("Получение {} рекомендованных фильмов для пользователя с id = {}", limit, userId);
+        if (limit == null || limit <= 0 || limit > MAX_RECOMMENDATIONS) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_RECOMMENDATIONS + "!");
+        }
+        if (!doesUserExist(userId)) {
+            throw new NoSuitableUnitException("Пользователь с указанным id не существует!");
+        }
+
+        return getFilms(filmStorage.getRecommendedIds(userId, limit));
+    }
+
+    public List<Film> getFeed(Long userId, Integer limit) {
+        log.info("Получение ленты из {} фильмов, лайкнутых друзьями пользователя с id = {}", limit, userId);
+        if (limit == null || limit <= 0 || limit > MAX_FEED_SIZE) {
+            throw new ValidationException("Размер ленты должен быть от 1 до " + MAX_FEED_SIZE + "!");
+        }
+        if (!doesUserExist(userId)) {
+            throw new NoSuitableUnitException("Пользователь с указанным id не существует!");
+        }
+
+        return getFilms(filmStorage.getFeedIds(userId, userStorage.getFriendIds(userId), limit));
+    }
+
+    public List<Film> getTrending(String window, Integer limit) {
+        log.info("Получение {} фильмов с наибольшим числом лайков за {}", limit, window);
+        TrendingWindow trendingWindow = TrendingWindow.of(window);
+        if (trendingWindow == null) {
+            throw new ValidationException("Окно должно быть одним из: " + TrendingWindow.names() + "!");
+        }
+        if (limit == null || limit <= 0 || limit > MAX_TRENDING) {
+            throw new ValidationException("Количество фильмов должно быть от 1 до " + MAX_TRENDING + "!");
+        }
+
+        return getFilms(filmStorage.getTrendingIds(trendingWindow, limit));
+    }
+
+    /**
+     * Загружает фильмы одним обращением к хранилищу, сохраняя порядок id; удаленные за это время фильмы пропускаются.
+     */
+    private List<Film> getFilms(long[] filmIds) {
+        return filmStorage.getByIds(Arrays.stream(filmIds).boxed().collect(Collectors.toList()));
     }
 
     private boolean areFilmParamsCorrect(Film film) {
@@ -107,6 +214,6 @@ public class FilmService {
     }
 
     private boolean doesFilmExist(Long filmId) {
-        return filmStorage.doesFilmExist(filmId);
+        return filmStorage.doFilmsExist(filmId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.util.LongIntCounter;
+import ru.yandex.practicum.filmorate.util.LongLongMap;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Обходы графа дружбы поверх функции "id пользователя -> отсортированный массив id друзей".
+ */
+final class FriendGraphTraversal {
+    private FriendGraphTraversal() {
+    }
+
+    /**
+     * Друзья друзей пользователя, упорядоченные по числу общих с ним друзей. На каждом шаге раскрывается
+     * не больше maxFanOut соседей (равномерная выборка), поэтому время не зависит от размера графа.
+     */
+    static long[] suggestFriends(long userId, LongFunction<long[]> friendsOf, int maxFanOut, int limit) {
+        long[] friends = friendsOf.apply(userId);
+        LongIntCounter mutualFriends = new LongIntCounter(Math.min(friends.length, maxFanOut) * 4);
+        for (long friendId : sample(friends, maxFanOut)) {
+            for (long candidateId : sample(friendsOf.apply(friendId), maxFanOut)) {
+                if (candidateId != userId && Arrays.binarySearch(friends, candidateId) < 0) {
+                    mutualFriends.increment(candidateId);
+                }
+            }
+        }
+
+        TopK topK = new TopK(limit);
+        mutualFriends.forEach(topK::offer);
+        return topK.toSortedArray();
+    }
+
+    /**
+     * Кратчайший путь между пользователями двунаправленным поиском в ширину: на каждом шаге целиком
+     * раскрывается меньший из двух фронтов. Поиск прекращается, если путь длиннее maxDepth
+     * или посещено больше maxVisited пользователей.
+     */
+    static PathSearchResult findShortestPath(long from, long to, LongFunction<long[]> neighbours,
+                                             int maxDepth, int maxVisited) {
+        if (from == to) {
+            return new PathSearchResult(new long[]{from}, false);
+        }
+
+        SearchSide forward = new SearchSide(from);
+        SearchSide backward = new SearchSide(to);
+        int visited = 2;
+        while (forward.frontierSize > 0 && backward.frontierSize > 0 && forward.depth + backward.depth < maxDepth) {
+            SearchSide side = forward.frontierSize <= backward.frontierSize ? forward : backward;
+            SearchSide other = side == forward ? backward : forward;
+
+            long[] nextFrontier = new long[Math.max(16, side.frontierSize)];
+            int nextFrontierSize = 0;
+            long meetingId = 0;
+            long shortestLength = Long.MAX_VALUE;
+            boolean budgetExceeded = false;
+            for (int i = 0; i < side.frontierSize && !budgetExceeded; i++) {
+                long userId = side.frontier[i];
+                for (long neighbourId : neighbours.apply(userId)) {
+                    if (side.parents.containsKey(neighbourId)) {
+                        continue;
+                    }
+                    side.parents.put(neighbourId, userId);
+                    side.depths.put(neighbourId, side.depth + 1);
+                    if (other.parents.containsKey(neighbourId)) {
+                        long length = side.depth + 1 + other.depths.get(neighbourId, 0);
+                        if (length < shortestLength) {
+                            shortestLength = length;
+                            meetingId = neighbourId;
+                        }
+                    }
+                    if (nextFrontierSize == nextFrontier.length) {
+                        nextFrontier = Arrays.copyOf(nextFrontier, nextFrontierSize * 2);
+                    }
+                    nextFrontier[nextFrontierSize++] = neighbourId;
+                    if (++visited > maxVisited) {
+                        budgetExceeded = true;
+                        break;
+                    }
+                }
+            }
+
+            if (shortestLength != Long.MAX_VALUE) {
+                return new PathSearchResult(buildPath(meetingId, forward, backward), false);
+            }
+            if (budgetExceeded) {
+                return new PathSearchResult(null, true);
+            }
+            side.frontier = nextFrontier;
+            side.frontierSize = nextFrontierSize;
+            side.depth++;
+        }
+        return new PathSearchResult(null, false);
+    }
+
+    private static long[] buildPath(long meetingId, SearchSide forward, SearchSide backward) {
+        int forwardLength = (int) forward.depths.get(meetingId, 0);
+        int backwardLength = (int) backward.depths.get(meetingId, 0);
+        long[] path = new long[forwardLength + backwardLength + 1];
+
+        long userId = meetingId;
+        for (int i = forwardLength; i > 0; i--) {
+            path[i] = userId;
+            userId = forward.parents.get(userId, userId);
+        }
+        path[0] = userId;
+
+        userId = meetingId;
+        for (int i = forwardLength + 1; i < path.length; i++) {
+            userId = backward.parents.get(userId, userId);
+            path[i] = userId;
+        }
+        return path;
+    }
+
+    private static long[] sample(long[] ids, int maxSize) {
+        if (ids.length <= maxSize) {
+            return ids;
+        }
+        long[] sample = new long[maxSize];
+        double step = (double) ids.length / maxSize;
+        for (int i = 0; i < maxSize; i++) {
+            sample[i] = ids[(int) (i * step)];
+        }
+        return sample;
+    }
+
+    static final class PathSearchResult {
+        private final long[] path;
+        private final boolean budgetExceeded;
+
+        private PathSearchResult(long[] path, boolean budgetExceeded) {
+            this.path = path;
+            this.budgetExceeded = budgetExceeded;
+        }
+
+        /**
+         * Путь от начального пользователя до конечного включительно или null, если путь не найден.
+         */
+        long[] getPath() {
+            return path;
+        }
+
+        boolean isBudgetExceeded() {
+            return budgetExceeded;
+        }
+    }
+
+    private static final class SearchSide {
+        private final LongLongMap parents = new LongLongMap(64);
+        private final LongLongMap depths = new LongLongMap(64);
+        private long[] frontier;
+        private int frontierSize = 1;
+        private int depth;
+
+        private SearchSide(long startId) {
+            frontier = new long[]{startId};
+            parents.put(startId, startId);
+            depths.put(startId, 0);
+        }
+    }
+}
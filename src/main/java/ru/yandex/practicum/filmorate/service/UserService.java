@@ -5,7 +5,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Distance;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserProjection;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
@@ -13,6 +16,12 @@ import java.util.*;
 @Service
 @Slf4j
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_SUGGESTIONS = 100;
+    private static final int MAX_SUGGESTION_FAN_OUT = 1000;
+    private static final int MAX_DISTANCE_DEPTH = 12;
+    private static final int MAX_DISTANCE_VISITED_USERS = 200_000;
+    private static final int MAX_MUTUAL_COUNT_IDS = 1000;
     private final UserStorage userStorage;
 
     public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
@@ -41,6 +50,16 @@ public class UserService {
         return userStorage.get(id);
     }
 
+    public Page<User> getPage(Long after, Integer limit) {
+        if (limit == null || limit <= 0) {
+            throw new ValidationException("Размер страницы должен быть положительным!");
+        }
+
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        List<User> users = userStorage.get(after == null ? 0 : after, pageSize + 1);
+        return Page.of(users, pageSize, User::getId);
+    }
+
     public Set<Long> addFriend(Long id, Long friendId) {
         log.info("Добавление в список друзей пользователя с id = {} друга с id = {}", id, friendId);
         if (!doUsersExist(id, friendId)) {
@@ -68,11 +87,7 @@ public class UserService {
                     "Пользователь с введенным id отсутствует в списке пользователей.");
         }
 
-        List<User> friends = new ArrayList<>();
-        Set<Long> friendsIds = getUsers().get(id).getFriendsIds();
-        friendsIds.stream()
-                .forEach(o1 -> friends.add(getUsers().get(o1)));
-        return friends;
+        return getUsersByIds(userStorage.getFriendIds(id), UserProjection.FULL);
     }
 
     public List<User> getCommonFriends(Long id, Long otherId) {
@@ -82,18 +97,86 @@ public class UserService {
                     "Пользователь(-ли) с введенным(-ми) id отсутствует(-ют) в списке пользователей.");
         }
 
-        Set<Long> friendsIdsOfFirstUser = getUsers().get(id).getFriendsIds();
-        Set<Long> friendsIdsOfSecondUser = getUsers().get(otherId).getFriendsIds();
-        if (friendsIdsOfFirstUser.isEmpty() || friendsIdsOfSecondUser.isEmpty()) {
-            return new ArrayList<>();
+        return userStorage.getCommonFriends(id, otherId);
+    }
+
+
+    public List<User> getSuggestions(Long id, Integer limit) {
+        log.info("Получение {} рекомендованных друзей для пользователя с id = {}", limit, id);
+        if (limit == null || limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_SUGGESTIONS + "!");
+        }
+        if (!doUsersExist(id)) {
+            throw new NoSuitableUnitException(
+                    "Пользователь с введенным id отсутствует в списке пользователей.");
         }
 
-        Set<Long> commonFriendsIds = new HashSet<>();
-        commonFriendsIds.addAll(friendsIdsOfFirstUser);
-        commonFriendsIds.retainAll(friendsIdsOfSecondUser);
-        return getUsersByIds(commonFriendsIds);
+        long[] suggestedIds = FriendGraphTraversal.suggestFriends(id, userStorage::getFriendIds,
+                MAX_SUGGESTION_FAN_OUT, limit);
+        return getUsersByIds(suggestedIds, UserProjection.CORE);
     }
 
+    /**
+     * Возвращает число общих друзей пользователя с каждым из переданных пользователей, без загрузки самих
+     * пользователей. Ключи идут в порядке переданных id; для отсутствующих пользователей счетчик равен 0.
+     */
+    public Map<Long, Integer> getMutualFriendCounts(Long id, List<Long> otherIds) {
+        log.info("Подсчет общих друзей пользователя с id = {} с другими пользователями", id);
+        if (otherIds == null || otherIds.size() > MAX_MUTUAL_COUNT_IDS) {
+            throw new ValidationException("Нужно передать список не более чем из " + MAX_MUTUAL_COUNT_IDS +
+                    " id пользователей!");
+        }
+        if (otherIds.stream().anyMatch(Objects::isNull)) {
+            throw new ValidationException("Список id пользователей не должен содержать пустых значений!");
+        }
+        if (!doUsersExist(id)) {
+            throw new NoSuitableUnitException(
+                    "Пользователь с введенным id отсутствует в списке пользователей.");
+        }
+
+        long[] distinctIds = otherIds.stream()
+                .distinct()
+                .mapToLong(Long::longValue)
+                .toArray();
+        int[] counts = userStorage.getCommonFriendCounts(id, distinctIds);
+        Map<Long, Integer> mutualCounts = new LinkedHashMap<>();
+        for (int i = 0; i < distinctIds.length; i++) {
+            mutualCounts.put(distinctIds[i], counts[i]);
+        }
+        return mutualCounts;
+    }
+
+    public Distance getDistance(Long id, Long otherId, Integer maxDepth, boolean withPath) {
+        log.info("Поиск кратчайшего пути между пользователями с id = {} и id = {}", id, otherId);
+        if (maxDepth == null || maxDepth <= 0 || maxDepth > MAX_DISTANCE_DEPTH) {
+            throw new ValidationException("Максимальная длина пути должна быть от 1 до " + MAX_DISTANCE_DEPTH + "!");
+        }
+        if (!doUsersExist(id, otherId)) {
+            throw new NoSuitableUnitException(
+                    "Пользователь(-ли) с введенным(-ми) id отсутствует(-ют) в списке пользователей.");
+        }
+
+        FriendGraphTraversal.PathSearchResult result = FriendGraphTraversal.findShortestPath(id, otherId,
+                userStorage::getConnectionIds, maxDepth, MAX_DISTANCE_VISITED_USERS);
+        if (result.isBudgetExceeded()) {
+            throw new NoSuitableUnitException("Путь между пользователями не найден: превышен лимит просмотренных " +
+                    "пользователей.");
+        }
+        if (result.getPath() == null) {
+            throw new NoSuitableUnitException("Путь между пользователями длиной не больше " + maxDepth +
+                    " не найден.");
+        }
+
+        long[] path = result.getPath();
+        List<Long> pathIds = null;
+        if (withPath) {
+            pathIds = new ArrayList<>(path.length);
+            for (long userId : path) {
+                pathIds.add(userId);
+            }
+        }
+        return new Distance(id, otherId, path.length - 1, pathIds);
+    }
 
     private void checkUserParams(User user) {
         if (user.getLogin().contains(" ")) {
@@ -106,14 +189,11 @@ public class UserService {
         return userStorage.doUsersExist(receivedUsersIds);
     }
 
-    private List<User> getUsersByIds(Set<Long> ids) {
-        List<User> userList = new ArrayList<>();
-        ids.stream()
-                .forEach(o1 -> userList.add(getUsers().get(o1)));
-        return userList;
-    }
-
-    private Map<Long, User> getUsers() {
-        return userStorage.getValues();
+    private List<User> getUsersByIds(long[] ids, UserProjection projection) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+        return userStorage.getByIds(idList, projection);
     }
 }
\ No newline at end of file
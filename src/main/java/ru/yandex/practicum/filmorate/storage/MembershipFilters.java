@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.BloomFilter;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Function;
+
+/**
+ * Фильтры Блума по id фильмов, id пользователей и email пользователей. Ответ "нет" точный и позволяет
+ * не ходить в БД за заведомо отсутствующими записями, ответ "возможно" проверяется запросом к БД.
+ * Фильтры строятся при старте приложения и пополняются при добавлении записей; удаленные записи
+ * остаются в фильтре до перестроения, что дает лишь лишний запрос к БД.
+ */
+@Slf4j
+@Component
+public class MembershipFilters {
+    private final JdbcTemplate jdbcTemplate;
+    private final long expectedSize;
+    private final double falsePositiveRate;
+    private final Filter filmIds;
+    private final Filter userIds;
+    private final Filter emails;
+
+    public MembershipFilters(JdbcTemplate jdbcTemplate,
+                             @Value("${filmorate.membership-filters.expected-size:1000000}") long expectedSize,
+                             @Value("${filmorate.membership-filters.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.expectedSize = expectedSize;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filmIds = new Filter("id фильмов", "films", "film_id", value -> ((Number) value).longValue());
+        this.userIds = new Filter("id пользователей", "users", "user_id", value -> ((Number) value).longValue());
+        this.emails = new Filter("email пользователей", "users", "email",
+                value -> BloomFilter.hash(normalizeEmail((String) value)));
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        rebuildFilms();
+        rebuildUsers();
+    }
+
+    public void rebuildFilms() {
+        filmIds.rebuild();
+    }
+
+    public void rebuildUsers() {
+        userIds.rebuild();
+        emails.rebuild();
+    }
+
+    public boolean mightContainFilm(long id) {
+        return filmIds.mightContain(id);
+    }
+
+    public boolean mightContainUser(long id) {
+        return userIds.mightContain(id);
+    }
+
+    public boolean mightContainEmail(String email) {
+        return email != null && emails.mightContain(BloomFilter.hash(normalizeEmail(email)));
+    }
+
+    public void addFilm(long id) {
+        filmIds.add(id);
+    }
+
+    public void addUser(long id, String email) {
+        userIds.add(id);
+        addEmail(email);
+    }
+
+    public void addEmail(String email) {
+        if (email != null) {
+            emails.add(BloomFilter.hash(normalizeEmail(email)));
+        }
+    }
+
+    /**
+     * Email в БД сравниваются без учета регистра (VARCHAR_IGNORECASE), поэтому в фильтр кладется
+     * приведенная форма, одинаковая для всех строк, равных по equalsIgnoreCase.
+     */
+    private static String normalizeEmail(String email) {
+        StringBuilder normalized = new StringBuilder(email.length());
+        for (int i = 0; i < email.length(); i++) {
+            normalized.append(Character.toLowerCase(Character.toUpperCase(email.charAt(i))));
+        }
+        return normalized.toString();
+    }
+
+    private final class Filter {
+        private final String name;
+        private final String table;
+        private final String column;
+        private final Function<Object, Long> hasher;
+        private volatile BloomFilter current;
+        private volatile BloomFilter next;
+
+        private Filter(String name, String table, String column, Function<Object, Long> hasher) {
+            this.name = name;
+            this.table = table;
+            this.column = column;
+            this.hasher = hasher;
+            this.current = new BloomFilter(expectedSize, falsePositiveRate);
+        }
+
+        private boolean mightContain(long value) {
+            return current.mightContain(value);
+        }
+
+        /**
+         * Значение добавляется сразу, до фиксации транзакции, чтобы после фиксации не было момента,
+         * когда запись уже есть в БД, а фильтр отвечает "нет". После фиксации оно добавляется повторно:
+         * так его не потеряет идущее параллельно перестроение, которое могло не увидеть незафиксированную запись.
+         */
+        private void add(long value) {
+            addNow(value);
+            TransactionCallbacks.afterCommit(() -> {
+                addNow(value);
+                BloomFilter filter = current;
+                if (filter.getInsertions() > filter.getCapacity()) {
+                    rebuild();
+                }
+            });
+        }
+
+        private void addNow(long value) {
+            BloomFilter building = next;
+            if (building != null) {
+                building.add(value);
+            }
+            current.add(value);
+        }
+
+        /**
+         * Строит новый фильтр с запасом по размеру в два раза. Пока он строится, новые значения пишутся в оба фильтра.
+         */
+        private synchronized void rebuild() {
+            Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + ";", Long.class);
+            BloomFilter building = new BloomFilter(Math.max(expectedSize, 2 * (rows == null ? 0 : rows)),
+                    falsePositiveRate);
+            next = building;
+            jdbcTemplate.query("SELECT " + column + " FROM " + table + ";",
+                    rs -> {
+                        building.add(hasher.apply(rs.getObject(1)));
+                    });
+            current = building;
+            next = null;
+            log.info("Фильтр {} построен: {} записей, емкость {}.", name, rows, building.getCapacity());
+        }
+    }
+}
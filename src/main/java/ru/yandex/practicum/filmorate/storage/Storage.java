@@ -13,5 +13,7 @@ public interface Storage<T> {
 
     T get(Long id);
 
+    List<T> get(Long after, int limit);
+
     Map<Long, T> getValues();
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public final class TransactionCallbacks {
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции (или сразу, если транзакции нет).
+     * Нужен для обновления структур в памяти только теми изменениями, которые действительно попали в БД.
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntCounter;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс совместных лайков "с этим фильмом также лайкают": для каждого фильма хранится не больше
+ * maxNeighbours соседей со счетчиком пользователей, лайкнувших оба фильма.
+ * При старте индекс считается точно (параллельно по фильмам) и обрезается до maxNeighbours лучших соседей.
+ * Дальше он обновляется на каждый лайк по алгоритму Space-Saving: новый сосед при заполненном списке
+ * вытесняет соседа с наименьшим счетчиком и наследует его счетчик + 1. Поэтому после обновлений счетчики
+ * приблизительные (завышены не больше, чем на счетчик вытесненного соседа), а частые соседи не теряются.
+ */
+@Slf4j
+@Component
+public class AlsoLikedIndex implements LikeListener {
+    private final int maxNeighbours;
+    private volatile Map<Long, Neighbours> neighboursByFilm = new ConcurrentHashMap<>();
+
+    public AlsoLikedIndex(@Value("${filmorate.also-liked.max-neighbours:100}") int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    /**
+     * Возвращает до limit id фильмов, чаще всего лайкнутых вместе с данным: по убыванию счетчика,
+     * при равенстве - по возрастанию id.
+     */
+    public long[] getAlsoLiked(long filmId, int limit) {
+        Neighbours neighbours = neighboursByFilm.get(filmId);
+        return neighbours == null ? new long[0] : neighbours.getTop(limit);
+    }
+
+    @Override
+    public void onLike(long filmId, long userId, long[] otherFilmIds) {
+        Map<Long, Neighbours> index = neighboursByFilm;
+        for (long otherFilmId : otherFilmIds) {
+            index.computeIfAbsent(filmId, id -> new Neighbours(maxNeighbours)).increment(otherFilmId);
+            index.computeIfAbsent(otherFilmId, id -> new Neighbours(maxNeighbours)).increment(filmId);
+        }
+    }
+
+    @Override
+    public void onUnlike(long filmId, long userId, long[] otherFilmIds) {
+        Map<Long, Neighbours> index = neighboursByFilm;
+        for (long otherFilmId : otherFilmIds) {
+            decrement(index, filmId, otherFilmId);
+            decrement(index, otherFilmId, filmId);
+        }
+    }
+
+    /**
+     * Считает соседей каждого фильма независимо: обходит лайкнувших его пользователей и их лайки.
+     * Память на подсчет нужна только под соседей одного фильма в каждом потоке.
+     */
+    @Override
+    public void onRebuild(LikeGraph likeGraph) {
+        Map<Long, Neighbours> index = new ConcurrentHashMap<>();
+        long[] filmIds = likeGraph.getFilmIds();
+        Arrays.stream(filmIds).parallel().forEach(filmId -> {
+            LongIntCounter counter = new LongIntCounter();
+            for (long userId : likeGraph.getLikers(filmId)) {
+                for (long otherFilmId : likeGraph.getLikedFilms(userId)) {
+                    if (otherFilmId != filmId) {
+                        counter.increment(otherFilmId);
+                    }
+                }
+            }
+            if (counter.size() == 0) {
+                return;
+            }
+
+            TopK topK = new TopK(maxNeighbours);
+            counter.forEach(topK::offer);
+            long[] best = topK.toSortedArray();
+            Neighbours neighbours = new Neighbours(maxNeighbours);
+            for (long otherFilmId : best) {
+                neighbours.put(otherFilmId, counter.get(otherFilmId));
+            }
+            index.put(filmId, neighbours);
+        });
+        neighboursByFilm = index;
+        log.info("Индекс совместных лайков построен по {} фильмам.", index.size());
+    }
+
+    private void decrement(Map<Long, Neighbours> index, long filmId, long otherFilmId) {
+        Neighbours neighbours = index.get(filmId);
+        if (neighbours != null) {
+            neighbours.decrement(otherFilmId);
+        }
+    }
+
+    /**
+     * Список соседей фильма ограниченного размера; несортированный, так как при maxNeighbours ~ 100
+     * линейный поиск дешевле поддержки порядка.
+     */
+    private static final class Neighbours {
+        private final long[] ids;
+        private final int[] counts;
+        private int size;
+
+        private Neighbours(int capacity) {
+            ids = new long[capacity];
+            counts = new int[capacity];
+        }
+
+        private synchronized void put(long id, int count) {
+            ids[size] = id;
+            counts[size] = count;
+            size++;
+        }
+
+        private synchronized void increment(long id) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                counts[index]++;
+            } else if (size < ids.length) {
+                put(id, 1);
+            } else if (size > 0) {
+                int min = 0;
+                for (int i = 1; i < size; i++) {
+                    if (counts[i] < counts[min]) {
+                        min = i;
+                    }
+                }
+                ids[min] = id;
+                counts[min]++;
+            }
+        }
+
+        private synchronized void decrement(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return;
+            }
+            if (--counts[index] <= 0) {
+                size--;
+                ids[index] = ids[size];
+                counts[index] = counts[size];
+            }
+        }
+
+        private synchronized long[] getTop(int limit) {
+            TopK topK = new TopK(Math.min(limit, size));
+            for (int i = 0; i < size; i++) {
+                topK.offer(ids[i], counts[i]);
+            }
+            return topK.toSortedArray();
+        }
+
+        private int indexOf(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента с разворачиванием при чтении: для каждого пользователя хранятся только его последние лайки,
+ * а при запросе ленты сливаются буферы всех друзей. Лайк стоит O(1), запрос - O(друзей * RECENT_LIKES).
+ * Снятые лайки не удаляются из буферов, а отсеиваются при ранжировании.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.feed.strategy", havingValue = "read", matchIfMissing = true)
+public class FanOutOnReadFeed implements FriendFeed {
+    private static final int RECENT_LIKES = 50;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, FeedBuffer> recentLikes = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile LikeGraph likeGraph;
+
+    public FanOutOnReadFeed(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public long[] getFeed(long userId, long[] friendIds, int limit) {
+        LikeGraph graph = likeGraph;
+        if (graph == null) {
+            return new long[0];
+        }
+
+        FeedRanking ranking = new FeedRanking(graph, friendIds);
+        for (long friendId : friendIds) {
+            FeedBuffer buffer = recentLikes.get(friendId);
+            if (buffer != null) {
+                buffer.drainTo(ranking);
+            }
+        }
+        return ranking.top(limit);
+    }
+
+    @Override
+    public void onLike(long filmId, long userId, long[] otherFilmIds) {
+        push(filmId, userId, sequence.incrementAndGet());
+    }
+
+    @Override
+    public void onUnlike(long filmId, long userId, long[] otherFilmIds) {
+    }
+
+    /**
+     * Порядковый номер лайка из БД (USER_LIKES_ID) задает порядок лайков до перезапуска, новые лайки
+     * нумеруются дальше в памяти.
+     */
+    @Override
+    public void onRebuild(LikeGraph likeGraph) {
+        this.likeGraph = likeGraph;
+        recentLikes.clear();
+        sequence.set(0);
+        jdbcTemplate.query("SELECT user_id, film_id, user_likes_id FROM user_likes ORDER BY user_likes_id;", rs -> {
+            long likeSequence = rs.getLong("user_likes_id");
+            push(rs.getLong("film_id"), rs.getLong("user_id"), likeSequence);
+            sequence.set(likeSequence);
+        });
+        log.info("Последние лайки для ленты загружены для {} пользователей.", recentLikes.size());
+    }
+
+    private void push(long filmId, long userId, long likeSequence) {
+        recentLikes.computeIfAbsent(userId, id -> new FeedBuffer(RECENT_LIKES)).push(filmId, userId, likeSequence);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента с разворачиванием при записи: каждый лайк сразу кладется в буферы лент всех пользователей,
+ * у которых лайкнувший есть в друзьях. Лайк стоит O(подписчиков), запрос - O(FEED_SIZE) независимо
+ * от числа друзей. Лайки удаленных из друзей и снятые лайки отсеиваются при ранжировании; лайки,
+ * поставленные новым другом до начала дружбы, в ленту не попадают.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.feed.strategy", havingValue = "write")
+public class FanOutOnWriteFeed implements FriendFeed {
+    private static final int FEED_SIZE = 500;
+    private static final int REPLAY_LIKES = 100_000;
+    private static final long[] NO_FOLLOWERS = new long[0];
+    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+    private final Map<Long, FeedBuffer> feeds = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile LikeGraph likeGraph;
+
+    public FanOutOnWriteFeed(JdbcTemplate jdbcTemplate, @Qualifier("userDbStorage") UserStorage userStorage) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userStorage = userStorage;
+    }
+
+    @Override
+    public long[] getFeed(long userId, long[] friendIds, int limit) {
+        LikeGraph graph = likeGraph;
+        FeedBuffer feed = feeds.get(userId);
+        if (graph == null || feed == null) {
+            return new long[0];
+        }
+
+        FeedRanking ranking = new FeedRanking(graph, friendIds);
+        feed.drainTo(ranking);
+        return ranking.top(limit);
+    }
+
+    @Override
+    public void onLike(long filmId, long userId, long[] otherFilmIds) {
+        fanOut(filmId, userId, sequence.incrementAndGet(), userStorage.getFollowerIds(userId));
+    }
+
+    @Override
+    public void onUnlike(long filmId, long userId, long[] otherFilmIds) {
+    }
+
+    /**
+     * Ленты заполняются повторной раскладкой последних REPLAY_LIKES лайков из БД в порядке USER_LIKES_ID.
+     * Подписчики всех лайкнувших в этом окне читаются заранее одним запросом, поэтому раскладка
+     * не обращается к БД на каждый лайк.
+     */
+    @Override
+    public void onRebuild(LikeGraph likeGraph) {
+        this.likeGraph = likeGraph;
+        feeds.clear();
+        Long lastLike = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(user_likes_id), 0) FROM user_likes;",
+                Long.class);
+        long lastSequence = lastLike == null ? 0 : lastLike;
+        long firstSequence = lastSequence - REPLAY_LIKES;
+
+        Map<Long, LongList> followerLists = new HashMap<>();
+        jdbcTemplate.query("SELECT DISTINCT friend_id, user_id FROM friend_links " +
+                        "WHERE friend_id IN (SELECT user_id FROM user_likes WHERE user_likes_id > ?);",
+                rs -> {
+                    followerLists.computeIfAbsent(rs.getLong("friend_id"), id -> new LongList())
+                            .add(rs.getLong("user_id"));
+                }, firstSequence);
+        Map<Long, long[]> followersByUser = new HashMap<>();
+        followerLists.forEach((userId, followers) -> followersByUser.put(userId, followers.toArray()));
+
+        jdbcTemplate.query("SELECT user_id, film_id, user_likes_id FROM user_likes WHERE user_likes_id > ? "
+                        + "ORDER BY user_likes_id;",
+                rs -> {
+                    long[] followers = followersByUser.getOrDefault(rs.getLong("user_id"), NO_FOLLOWERS);
+                    fanOut(rs.getLong("film_id"), rs.getLong("user_id"), rs.getLong("user_likes_id"), followers);
+                }, firstSequence);
+        sequence.set(lastSequence);
+        log.info("Ленты друзей построены для {} пользователей.", feeds.size());
+    }
+
+    private void fanOut(long filmId, long userId, long likeSequence, long[] followerIds) {
+        for (long followerId : followerIds) {
+            feeds.computeIfAbsent(followerId, id -> new FeedBuffer(FEED_SIZE)).push(filmId, userId, likeSequence);
+        }
+    }
+}
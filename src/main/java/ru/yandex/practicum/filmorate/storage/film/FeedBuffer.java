@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Кольцевой буфер последних лайков ограниченного размера: при переполнении вытесняется самый старый.
+ * Хранит тройки (фильм, пользователь, порядковый номер лайка) в параллельных массивах.
+ */
+class FeedBuffer {
+    private final long[] filmIds;
+    private final long[] userIds;
+    private final long[] sequences;
+    private int next;
+    private int size;
+
+    FeedBuffer(int capacity) {
+        filmIds = new long[capacity];
+        userIds = new long[capacity];
+        sequences = new long[capacity];
+    }
+
+    synchronized void push(long filmId, long userId, long sequence) {
+        filmIds[next] = filmId;
+        userIds[next] = userId;
+        sequences[next] = sequence;
+        next = (next + 1) % filmIds.length;
+        size = Math.min(size + 1, filmIds.length);
+    }
+
+    synchronized void drainTo(FeedRanking ranking) {
+        for (int i = 1; i <= size; i++) {
+            int index = Math.floorMod(next - i, filmIds.length);
+            ranking.offer(filmIds[index], userIds[index], sequences[index]);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.util.LongIntCounter;
+import ru.yandex.practicum.filmorate.util.LongLongMap;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import java.util.Arrays;
+
+/**
+ * Ранжирование ленты, общее для обеих стратегий: учитывается только лайк, который до сих пор стоит
+ * (по LikeGraph), от текущего друга и один раз на пару фильм-друг. Вес фильма - число таких друзей,
+ * при равенстве выше фильм с более поздним лайком.
+ */
+class FeedRanking {
+    private static final int SEQUENCE_BITS = 40;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private final LikeGraph likeGraph;
+    private final long[] friendIds;
+    private final LongLongMap seenLikes = new LongLongMap(64);
+    private final LongIntCounter friendCounts = new LongIntCounter();
+    private final LongLongMap latestSequences = new LongLongMap(64);
+
+    FeedRanking(LikeGraph likeGraph, long[] friendIds) {
+        this.likeGraph = likeGraph;
+        this.friendIds = friendIds;
+    }
+
+    /**
+     * Id в БД - INTEGER, поэтому пара (фильм, друг) без потерь упаковывается в один long.
+     */
+    void offer(long filmId, long friendId, long sequence) {
+        if (Arrays.binarySearch(friendIds, friendId) < 0
+                || Arrays.binarySearch(likeGraph.getLikedFilms(friendId), filmId) < 0) {
+            return;
+        }
+        long like = filmId << 32 | friendId;
+        if (!seenLikes.containsKey(like)) {
+            seenLikes.put(like, 1);
+            friendCounts.increment(filmId);
+        }
+        latestSequences.put(filmId, Math.max(latestSequences.get(filmId, 0), sequence));
+    }
+
+    long[] top(int limit) {
+        TopK films = new TopK(limit);
+        friendCounts.forEach((filmId, count) -> films.offer(filmId,
+                (long) count << SEQUENCE_BITS | Math.min(latestSequences.get(filmId, 0), SEQUENCE_MASK)));
+        return films.toSortedArray();
+    }
+}
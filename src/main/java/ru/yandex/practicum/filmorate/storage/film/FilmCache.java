@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру и времени жизни кэш полностью загруженных фильмов (LRU).
+ * Наружу всегда отдаются копии, чтобы изменения у вызывающего кода не попадали в кэш.
+ */
+@Slf4j
+@Component
+public class FilmCache {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Long, CachedFilm> films;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long invalidations;
+
+    public FilmCache(@Value("${filmorate.film-cache.max-size:10000}") int maxSize,
+                     @Value("${filmorate.film-cache.ttl:10m}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.films = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedFilm> eldest) {
+                if (size() > FilmCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Возвращает фильм из кэша, а при промахе загружает его через loader и кладет в кэш.
+     * Загрузка идет без блокировки кэша; если за это время фильм был инвалидирован, результат не кэшируется.
+     */
+    public Film get(Long id, Function<Long, Film> loader) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            CachedFilm cachedFilm = films.get(id);
+            if (cachedFilm != null && cachedFilm.expiresAt - System.nanoTime() > 0) {
+                hits.incrementAndGet();
+                return copyOf(cachedFilm.film);
+            }
+            if (cachedFilm != null) {
+                films.remove(id);
+                evictions.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            invalidationsBeforeLoad = invalidations;
+        }
+
+        Film film = loader.apply(id);
+        synchronized (this) {
+            if (invalidations == invalidationsBeforeLoad) {
+                films.put(id, new CachedFilm(copyOf(film), System.nanoTime() + ttlNanos));
+            }
+        }
+        return film;
+    }
+
+    public synchronized void invalidate(Long id) {
+        invalidations++;
+        films.remove(id);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        films.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), films.size(), maxSize);
+    }
+
+    private Film copyOf(Film film) {
+        return new Film(
+                film.getId(),
+                film.getName(),
+                film.getDescription(),
+                film.getGenres() == null ? null : new ArrayList<>(film.getGenres()),
+                film.getMpa(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                new HashSet<>(film.getUserLikes()));
+    }
+
+    private static final class CachedFilm {
+        private final Film film;
+        private final long expiresAt;
+
+        private CachedFilm(Film film, long expiresAt) {
+            this.film = film;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,67 +1,150 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
-import org.h2.jdbc.JdbcSQLSyntaxErrorException;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.exception.NotUniqueEntityException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
 import ru.yandex.practicum.filmorate.model.Genres;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.MembershipFilters;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceData;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component("filmDbStorage")
 public class FilmDbStorage implements FilmStorage {
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final int IMPORT_CHUNK_SIZE = 500;
     private final JdbcTemplate jdbcTemplate;
-
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    private final TransactionTemplate transactionTemplate;
+    private final FilmLeaderboard filmLeaderboard;
+    private final FilmCache filmCache;
+    private final ReferenceData referenceData;
+    private final MembershipFilters membershipFilters;
+    private final LikeGraph likeGraph;
+    private final AlsoLikedIndex alsoLikedIndex;
+    private final LikeSimilarityIndex likeSimilarityIndex;
+    private final FriendFeed friendFeed;
+    private final TrendingLikes trendingLikes;
+    private final Clock clock;
+
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         FilmLeaderboard filmLeaderboard, FilmCache filmCache, ReferenceData referenceData,
+                         MembershipFilters membershipFilters, LikeGraph likeGraph, AlsoLikedIndex alsoLikedIndex,
+                         LikeSimilarityIndex likeSimilarityIndex, FriendFeed friendFeed, TrendingLikes trendingLikes,
+                         Clock clock) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.filmLeaderboard = filmLeaderboard;
+        this.filmCache = filmCache;
+        this.referenceData = referenceData;
+        this.membershipFilters = membershipFilters;
+        this.likeGraph = likeGraph;
+        this.alsoLikedIndex = alsoLikedIndex;
+        this.likeSimilarityIndex = likeSimilarityIndex;
+        this.friendFeed = friendFeed;
+        this.trendingLikes = trendingLikes;
+        this.clock = clock;
+        referenceData.addReloadListener(filmCache::invalidateAll);
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
         log.info("Добавление нового фильма {} в БД.", film);
         checkRating(film);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
         try {
             String queryFilmsInsert = "INSERT INTO films (name, description, mpa_id, release_date, duration) " +
                     "VALUES (?, ?, ?, ?, ?);";
-            jdbcTemplate.update(queryFilmsInsert,
-                    film.getName(),
-                    film.getDescription(),
-                    film.getMpa().getId(),
-                    film.getReleaseDate(),
-                    film.getDuration());
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(queryFilmsInsert, new String[]{"film_id"});
+                statement.setString(1, film.getName());
+                statement.setString(2, film.getDescription());
+                statement.setInt(3, film.getMpa().getId());
+                statement.setObject(4, film.getReleaseDate());
+                statement.setInt(5, film.getDuration());
+                return statement;
+            }, keyHolder);
         } catch (RuntimeException e) {
             throw new NotUniqueEntityException("Фильм с такими данными уже есть в БД");
         }
 
-        String queryFilmsSelect = "SELECT film_id " +
-                "FROM films " +
-                "WHERE name = ? AND description = ? AND mpa_id = ? AND release_date = ? AND duration = ?;";
-
-        Long filmId = jdbcTemplate.queryForObject(queryFilmsSelect,
-                (rs, rowNum) -> mapRowToIdLong(rs, "film_id"),
-                film.getName(),
-                film.getDescription(),
-                film.getMpa().getId(),
-                film.getReleaseDate(),
-                film.getDuration());
-
+        Long filmId = keyHolder.getKey().longValue();
         film.setId(filmId);
-        updateGenresAndLeaveOnlyUnique(film);
+        membershipFilters.addFilm(filmId);
+        insertFilmGenresBatch(List.of(film));
+        TransactionCallbacks.afterCommit(() -> filmLeaderboard.register(film));
 
         return film;
     }
 
+    /**
+     * Добавляет фильмы частями по IMPORT_CHUNK_SIZE, каждая часть - отдельная транзакция с пакетной вставкой
+     * фильмов и их жанров. Если часть не удалось сохранить целиком, ее фильмы добавляются по одному,
+     * чтобы ошибка была отнесена к конкретному фильму.
+     */
     @Override
+    public List<FilmImportResult> createAll(List<Film> films) {
+        log.info("Пакетное добавление в БД {} фильмов.", films.size());
+        FilmImportResult[] results = new FilmImportResult[films.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            if (referenceData.getMpa(film.getMpa().getId()) == null) {
+                results[i] = FilmImportResult.rejected(i, "Неверно введен рейтинг фильма");
+            } else if (!areGenresCorrect(film)) {
+                results[i] = FilmImportResult.rejected(i, "Неверно введен жанр фильма");
+            } else {
+                validIndexes.add(i);
+            }
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += IMPORT_CHUNK_SIZE) {
+            List<Integer> chunk = validIndexes.subList(from, Math.min(from + IMPORT_CHUNK_SIZE, validIndexes.size()));
+            try {
+                insertInTransaction(chunk, films);
+                for (Integer index : chunk) {
+                    results[index] = FilmImportResult.created(index, films.get(index).getId());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось добавить пакет фильмов целиком, фильмы будут добавлены по одному.", e);
+                for (Integer index : chunk) {
+                    try {
+                        insertInTransaction(List.of(index), films);
+                        results[index] = FilmImportResult.created(index, films.get(index).getId());
+                    } catch (RuntimeException ex) {
+                        films.get(index).setId(null);
+                        results[index] = FilmImportResult.rejected(index, "Фильм с такими данными уже есть в БД");
+                    }
+                }
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    @Override
+    @Transactional
     public Film update(Film film) {
         checkRating(film);
         if (!areGenresCorrect(film)) {
@@ -72,7 +155,7 @@ public class FilmDbStorage implements FilmStorage {
         try {
             String queryFilmsUpdate = "UPDATE films " +
                     "SET name = ?, description = ?, mpa_id = ?, release_date = ?, duration = ? WHERE film_id = ?;";
-            jdbcTemplate.update(queryFilmsUpdate,
+            int updatedFilms = jdbcTemplate.update(queryFilmsUpdate,
                     film.getName(),
                     film.getDescription(),
                     film.getMpa().getId(),
@@ -82,7 +165,13 @@ public class FilmDbStorage implements FilmStorage {
 
             String queryFilmsGenresDelete = "DELETE FROM film_genres WHERE film_id = ?;";
             jdbcTemplate.update(queryFilmsGenresDelete, film.getId());
-            updateGenresAndLeaveOnlyUnique(film);
+            insertFilmGenresBatch(List.of(film));
+            TransactionCallbacks.afterCommit(() -> {
+                filmCache.invalidate(film.getId());
+                if (updatedFilms > 0) {
+                    filmLeaderboard.register(film);
+                }
+            });
             return film;
 
         } catch (RuntimeException e) {
@@ -93,128 +182,216 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> get() {
         log.info("Получение из БД всех фильмов.");
-        String queryFilmsSelect = "SELECT * " +
+        String queryFilmsSelect = "SELECT f.* " +
                 "FROM films AS f " +
-                "LEFT JOIN film_genres AS fg ON f.film_id=fg.film_id " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "LEFT JOIN mpa AS m ON f.mpa_id=m.mpa_id;";
+                "ORDER BY f.film_id;";
 
-        List<Film> filmsWithoutGenresLikes = jdbcTemplate.query(queryFilmsSelect, (rs, rowNum) -> mapRowToFilm(rs));
+        Map<Long, Film> films = new LinkedHashMap<>();
+        jdbcTemplate.query(queryFilmsSelect, rs -> {
+            Film film = mapRowToFilm(rs);
+            films.put(film.getId(), film);
+        });
 
-        if (filmsWithoutGenresLikes.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        List<Film> filmsWithoutLikes = getFilmsWithGenres(filmsWithoutGenresLikes);
-        List<Film> filmsWithLikes = new ArrayList<>();
-        for (Film film : filmsWithoutLikes) {
-            filmsWithLikes.add(getFilmWithLikes(film));
-        }
-
-        Collections.sort(filmsWithLikes, (o1, o2) -> (int) (o1.getId() - o2.getId()));
-
-        return filmsWithLikes;
+        loadGenresAndLikes(films, "");
+        return new ArrayList<>(films.values());
     }
 
     @Override
     public Film get(Long id) {
+        if (id == null || !membershipFilters.mightContainFilm(id)) {
+            throw new NoSuitableUnitException("Фильма с таким id нет в БД");
+        }
+        return filmCache.get(id, this::loadFilm);
+    }
+
+    private Film loadFilm(Long id) {
         log.info("Получение из БД фильма с id = " + id + " .");
-        String queryFilmsSelect = "SELECT * " +
+        String queryFilmsSelect = "SELECT f.* " +
                 "FROM films AS f " +
-                "LEFT JOIN film_genres AS fg ON f.film_id=fg.film_id " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "LEFT JOIN mpa AS m ON f.mpa_id=m.mpa_id " +
                 "WHERE f.film_id = ?;";
 
-        try {
-            List<Film> filmsWithoutLikes = jdbcTemplate.query(queryFilmsSelect, (rs, rowNum) -> mapRowToFilm(rs), id);
-            List<Genres> allGenresOfFilm = new ArrayList<>();
-            for (Film film : filmsWithoutLikes) {
-                if (film.getGenres() != null) {
-                    allGenresOfFilm.addAll(film.getGenres());
-                }
-            }
-
-            Film filmWithoutLikes = filmsWithoutLikes.get(0);
-            Film film = new Film(
-                    filmWithoutLikes.getId(),
-                    filmWithoutLikes.getName(),
-                    filmWithoutLikes.getDescription(),
-                    allGenresOfFilm,
-                    filmWithoutLikes.getMpa(),
-                    filmWithoutLikes.getReleaseDate(),
-                    filmWithoutLikes.getDuration(),
-                    new HashSet<>());
-
-            return getFilmWithLikes(film);
-        } catch (RuntimeException e) {
+        List<Film> films = jdbcTemplate.query(queryFilmsSelect, (rs, rowNum) -> mapRowToFilm(rs), id);
+        if (films.isEmpty()) {
             throw new NoSuitableUnitException("Фильма с таким id нет в БД");
         }
+
+        Film film = films.get(0);
+        loadGenresAndLikes(Map.of(film.getId(), film), "WHERE film_id = ?", id);
+        return film;
+    }
+
+    @Override
+    public List<Film> get(Long after, int limit) {
+        log.info("Получение из БД {} фильмов с id больше {}.", limit, after);
+        String queryFilmsSelect = "SELECT f.* " +
+                "FROM films AS f " +
+                "WHERE f.film_id > ? " +
+                "ORDER BY f.film_id " +
+                "LIMIT ?;";
+
+        Map<Long, Film> films = new LinkedHashMap<>();
+        jdbcTemplate.query(queryFilmsSelect, rs -> {
+            Film film = mapRowToFilm(rs);
+            films.put(film.getId(), film);
+        }, after, limit);
+
+        if (!films.isEmpty()) {
+            List<Long> ids = new ArrayList<>(films.keySet());
+            loadGenresAndLikes(films, "WHERE film_id BETWEEN ? AND ?", ids.get(0), ids.get(ids.size() - 1));
+        }
+        return new ArrayList<>(films.values());
     }
 
     @Override
     public Map<Long, Film> getValues() {
         Map<Long, Film> filmMap = new HashMap<>();
-        List<Film> films = get();
-        for (Film film : films) {
-            filmMap.put(film.getId(), getFilmWithLikes(film));
+        for (Film film : get()) {
+            filmMap.put(film.getId(), film);
         }
         return filmMap;
     }
 
     @Override
-    public Film putLike(Long id, Long userId) {
-        String queryUserLikesSelect = "SELECT * FROM user_likes WHERE film_id = ?;";
+    public void export(Consumer<Film> consumer) {
+        log.info("Потоковая выгрузка из БД всех фильмов.");
+        String queryFilmsSelect = "SELECT f.*, " +
+                "(SELECT LISTAGG(DISTINCT fg.genre_id, ',') WITHIN GROUP (ORDER BY fg.genre_id) " +
+                "FROM film_genres AS fg WHERE fg.film_id = f.film_id) AS genre_ids, " +
+                "(SELECT LISTAGG(ul.user_id, ',') " +
+                "FROM user_likes AS ul WHERE ul.film_id = f.film_id) AS user_ids " +
+                "FROM films AS f " +
+                "ORDER BY f.film_id;";
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(queryFilmsSelect,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            return statement;
+        }, rs -> {
+            Film film = mapRowToFilm(rs);
+            for (String genreId : splitIds(rs.getString("genre_ids"))) {
+                film.getGenres().add(referenceData.getGenre(Integer.parseInt(genreId)));
+            }
+            for (String userId : splitIds(rs.getString("user_ids"))) {
+                film.addUserLike(Long.valueOf(userId));
+            }
+            consumer.accept(film);
+        });
+    }
+
+    @Override
+    public List<Film> getPopular(int count) {
+        log.info("Получение {} фильмов с наибольшим числом лайков.", count);
+        return getByIds(filmLeaderboard.getTop(count));
+    }
 
-        List<Long> filmLikes = jdbcTemplate.query(queryUserLikesSelect,
-                (rs, rowNum) -> mapRowToIdLong(rs, "user_id"), id);
-        if (!filmLikes.contains(userId)) {
-            String queryUserLikesInsert = "INSERT INTO user_likes (film_id, user_id) VALUES (?, ?);";
+    @Override
+    public List<Film> getPopular(int count, Integer genreId, Integer mpaId, Integer year) {
+        log.info("Получение {} фильмов с наибольшим числом лайков: жанр {}, рейтинг {}, год {}.",
+                count, genreId, mpaId, year);
+        return getByIds(filmLeaderboard.getTop(count, genreId, mpaId, year));
+    }
 
-            jdbcTemplate.update(queryUserLikesInsert, id, userId);
+    @Override
+    @Transactional
+    public Film putLike(Long id, Long userId) {
+        String queryUserLikesMerge = "MERGE INTO user_likes AS ul " +
+                "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP WITH TIME ZONE))) " +
+                "AS v (film_id, user_id, liked_at) " +
+                "ON ul.film_id = v.film_id AND ul.user_id = v.user_id " +
+                "WHEN NOT MATCHED THEN INSERT (film_id, user_id, liked_at) VALUES (v.film_id, v.user_id, v.liked_at);";
+
+        OffsetDateTime likedAt = OffsetDateTime.now(clock);
+        int insertedLikes;
+        try {
+            insertedLikes = jdbcTemplate.update(queryUserLikesMerge, id, userId, likedAt);
+        } catch (DuplicateKeyException e) {
+            insertedLikes = 0;
+        }
+        if (insertedLikes > 0) {
+            String queryFilmsUpdate = "UPDATE films SET like_count = like_count + 1, like_version = like_version + 1 " +
+                    "WHERE film_id = ?;";
+            jdbcTemplate.update(queryFilmsUpdate, id);
+            updateLeaderboardAfterCommit(id);
+            TransactionCallbacks.afterCommit(() -> filmCache.invalidate(id));
+            TransactionCallbacks.afterCommit(() -> likeGraph.addLike(id, userId));
+            TransactionCallbacks.afterCommit(() -> trendingLikes.addLike(id, likedAt.toInstant()));
         }
 
-        Film film = get(id);
+        Film film = loadFilm(id);
         return film;
     }
 
     @Override
+    @Transactional
     public Film deleteLike(Long id, Long userId) {
-        String queryUserLikesSelect = "SELECT * FROM user_likes WHERE film_id = ?;";
-
-        List<Long> filmLikes = jdbcTemplate.query(queryUserLikesSelect,
-                (rs, rowNum) -> mapRowToIdLong(rs, "user_id"), id);
-        if (filmLikes.contains(userId)) {
-            String queryUserLikesDelete = "DELETE FROM user_likes WHERE user_id = ?";
-
-            jdbcTemplate.update(queryUserLikesDelete, userId);
+        String queryLikedAtSelect = "SELECT liked_at FROM user_likes WHERE film_id = ? AND user_id = ?;";
+        OffsetDateTime likedAt = jdbcTemplate.queryForList(queryLikedAtSelect, OffsetDateTime.class, id, userId).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+
+        String queryUserLikesDelete = "DELETE FROM user_likes WHERE film_id = ? AND user_id = ?;";
+        int deletedLikes = jdbcTemplate.update(queryUserLikesDelete, id, userId);
+        if (deletedLikes > 0) {
+            String queryFilmsUpdate = "UPDATE films SET like_count = like_count - ?, like_version = like_version + 1 " +
+                    "WHERE film_id = ?;";
+            jdbcTemplate.update(queryFilmsUpdate, deletedLikes, id);
+            updateLeaderboardAfterCommit(id);
+            TransactionCallbacks.afterCommit(() -> filmCache.invalidate(id));
+            TransactionCallbacks.afterCommit(() -> likeGraph.removeLike(id, userId));
+            if (likedAt != null) {
+                TransactionCallbacks.afterCommit(() -> trendingLikes.removeLike(id, likedAt.toInstant()));
+            }
         }
 
-        Film film = get(id);
+        Film film = loadFilm(id);
         return film;
     }
 
-    private void checkRating(Film film) {
-        String sqlMpa = "SELECT mpa_id " +
-                "FROM mpa;";
+    /**
+     * Читает число лайков и версию, которые фильм получил в текущей транзакции (строка заблокирована ее UPDATE),
+     * и передает их рейтингу после коммита.
+     */
+    private void updateLeaderboardAfterCommit(Long id) {
+        String queryLikeCountSelect = "SELECT like_count, like_version FROM films WHERE film_id = ?;";
+        jdbcTemplate.query(queryLikeCountSelect, rs -> {
+            long likes = rs.getLong("like_count");
+            long version = rs.getLong("like_version");
+            TransactionCallbacks.afterCommit(() -> filmLeaderboard.setLikes(id, likes, version));
+        }, id);
+    }
+
+    @Override
+    public long[] getAlsoLikedIds(Long id, int limit) {
+        return alsoLikedIndex.getAlsoLiked(id, limit);
+    }
 
-        List<Integer> mpaIds = jdbcTemplate.query(sqlMpa, (rs, rowNum) -> mapRowToIdInteger(rs, "mpa_id"));
+    @Override
+    public long[] getRecommendedIds(Long userId, int limit) {
+        return likeSimilarityIndex.recommend(userId, limit);
+    }
+
+    @Override
+    public long[] getTrendingIds(TrendingWindow window, int limit) {
+        return trendingLikes.getTop(window, limit);
+    }
+
+    @Override
+    public long[] getFeedIds(Long userId, long[] friendIds, int limit) {
+        return friendFeed.getFeed(userId, friendIds, limit);
+    }
 
-        if (!mpaIds.contains(film.getMpa().getId())) {
+    private void checkRating(Film film) {
+        if (referenceData.getMpa(film.getMpa().getId()) == null) {
             throw new ValidationException("Неверно введен рейтинг фильма");
         }
     }
 
     private boolean areGenresCorrect(Film film) {
         if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            String sqlGenre = "SELECT genre_id " +
-                    "FROM genres;";
-
-            List<Integer> genresIds = jdbcTemplate.query(sqlGenre,
-                    (rs, rowNum) -> mapRowToIdInteger(rs, "genre_id"));
-
             for (Genres genres : film.getGenres())
-                if (!genresIds.contains(genres.getId())) {
+                if (referenceData.getGenre(genres.getId()) == null) {
                     return false;
                 }
             return true;
@@ -227,156 +404,180 @@ public class FilmDbStorage implements FilmStorage {
         String name = rs.getString("name");
         String description = rs.getString("description");
 
-        List<Genres> genresList = null;
-        Mpa mpa;
-
-        try {
-            Integer genreId = rs.getInt("genre_id");
-            String genreName = rs.getString("genre");
-            if (genreName != null) {
-                Genres genre = new Genres(genreId, genreName);
-                genresList = List.of(genre);
-            }
-        } catch (JdbcSQLSyntaxErrorException e) {
-            genresList = null;
-        }
-
-        try {
-            Integer mpaId = rs.getInt("mpa_id");
-            String mpaName = rs.getString("mpa");
-            mpa = new Mpa(mpaId, mpaName);
-        } catch (JdbcSQLSyntaxErrorException e) {
-            mpa = null;
-        }
+        Mpa mpa = referenceData.getMpa(rs.getInt("mpa_id"));
 
         LocalDate releaseDate = rs.getDate("release_date").toLocalDate();
         Integer duration = rs.getInt("duration");
 
-        return new Film(id, name, description, genresList, mpa, releaseDate, duration, new HashSet<>());
+        return new Film(id, name, description, new ArrayList<>(), mpa, releaseDate, duration, new HashSet<>());
     }
 
-    private Long mapRowToIdLong(ResultSet rs, String column) throws SQLException {
-        return rs.getLong(column);
-    }
+    /**
+     * Читает фильмы с указанными id в том же порядке, в котором переданы id.
+     */
+    @Override
+    public List<Film> getByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-    private Integer mapRowToIdInteger(ResultSet rs, String column) throws SQLException {
-        return rs.getInt(column);
-    }
+        String queryFilmsSelect = "SELECT f.* " +
+                "FROM films AS f " +
+                "WHERE f.film_id IN (" + placeholders(ids.size()) + ");";
 
-    private Genres mapRowToGenres(ResultSet rs) throws SQLException {
-        return new Genres(rs.getInt("genre_id"), rs.getString("genre"));
+        Map<Long, Film> films = new LinkedHashMap<>();
+        for (Long id : ids) {
+            films.put(id, null);
+        }
+        jdbcTemplate.query(queryFilmsSelect, rs -> {
+            Film film = mapRowToFilm(rs);
+            films.put(film.getId(), film);
+        }, ids.toArray());
+        films.values().removeIf(Objects::isNull);
+
+        loadGenresAndLikes(films, "WHERE film_id IN (" + placeholders(films.size()) + ")",
+                films.keySet().toArray());
+        return new ArrayList<>(films.values());
     }
 
-    private int getGenresId(List<Genres> genres) {
-        return genres.get(0).getId();
+    private String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
     }
 
-    private Film getFilmWithLikes(Film film) {
-        Long filmId = film.getId();
-
-        String queryUserLikesSelect = "SELECT user_id " +
-                "FROM user_likes " +
-                "WHERE film_id = ?;";
-        List<Long> userLikes = jdbcTemplate.query(queryUserLikesSelect,
-                (rs, rowNum) -> mapRowToIdLong(rs, "user_id"), filmId);
-
-        Set<Long> allUserLikes = new HashSet<>();
-        allUserLikes.addAll(userLikes);
-        film.setUserLikes(allUserLikes);
-
-        return film;
+    private String[] splitIds(String ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new String[0];
+        }
+        return ids.split(",");
     }
 
-    private List<Film> getFilmsWithGenres(List<Film> filmsWithoutGenres) {
-        Map<Long, Set<Long>> genresOfFilms = new HashMap<>();
-        for (Film film : filmsWithoutGenres) {
-            genresOfFilms.put(film.getId(), new HashSet<>());
-        }
-        for (Film film : filmsWithoutGenres) {
-            Set<Long> currentGenresIds = genresOfFilms.get(film.getId());
-            if (film.getGenres() != null) {
-                currentGenresIds.add((long) getGenresId(film.getGenres()));
-                genresOfFilms.put(film.getId(), currentGenresIds);
-            }
+    /**
+     * Догружает жанры и лайки для уже прочитанных фильмов двумя запросами, независимо от количества фильмов.
+     * Сами жанры берутся из справочника в памяти. Условие filmIdCondition применяется к колонке film_id таблиц film_genres и user_likes
+     * (пустая строка - без ограничений).
+     */
+    private void loadGenresAndLikes(Map<Long, Film> films, String filmIdCondition, Object... args) {
+        if (films.isEmpty()) {
+            return;
         }
 
-        String queryGenresSelect = "SELECT * FROM genres;";
-        List<Genres> allGenres = jdbcTemplate.query(queryGenresSelect, (rs, rowNum) -> mapRowToGenres(rs));
+        String queryFilmGenresSelect = "SELECT DISTINCT film_id, genre_id " +
+                "FROM film_genres " + filmIdCondition + " " +
+                "ORDER BY film_id, genre_id;";
+        jdbcTemplate.query(queryFilmGenresSelect, rs -> {
+            Film film = films.get(rs.getLong("film_id"));
+            Genres genres = referenceData.getGenre(rs.getInt("genre_id"));
+            if (film != null && genres != null) {
+                film.getGenres().add(genres);
+            }
+        }, args);
 
-        List<Film> filmsWithGenres = new ArrayList<>();
-        Long currentFilmId = null;
-        for (Film film : filmsWithoutGenres) {
-            if (film.getId() != currentFilmId) {
-                filmsWithGenres.add(getFilmWithGenres(film, genresOfFilms.get(film.getId()), allGenres));
-                currentFilmId = film.getId();
+        String queryUserLikesSelect = "SELECT film_id, user_id FROM user_likes " + filmIdCondition + ";";
+        jdbcTemplate.query(queryUserLikesSelect, rs -> {
+            Film film = films.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.addUserLike(rs.getLong("user_id"));
             }
+        }, args);
+    }
+
+    private void insertInTransaction(List<Integer> indexes, List<Film> films) {
+        List<Film> chunk = new ArrayList<>();
+        for (Integer index : indexes) {
+            chunk.add(films.get(index));
         }
 
-        return filmsWithGenres;
+        transactionTemplate.executeWithoutResult(status -> {
+            insertFilmsBatch(chunk);
+            insertFilmGenresBatch(chunk);
+            TransactionCallbacks.afterCommit(() -> {
+                for (Film film : chunk) {
+                    filmLeaderboard.register(film);
+                }
+            });
+        });
     }
 
-    private Film getFilmWithGenres(Film film, Set<Long> genreIds, List<Genres> allGenres) {
-        List<Genres> genresOfCurrentFilm = new ArrayList<>();
-
-        if (film.getGenres() != null) {
-            for (Long genreId : genreIds) {
-                for (Genres genres : allGenres) {
-                    if (genres.getId() == genreId) {
-                        genresOfCurrentFilm.add(genres);
+    private void insertFilmsBatch(List<Film> films) {
+        String queryFilmsInsert = "INSERT INTO films (name, description, mpa_id, release_date, duration) " +
+                "VALUES (?, ?, ?, ?, ?);";
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(queryFilmsInsert,
+                    new String[]{"film_id"})) {
+                for (Film film : films) {
+                    statement.setString(1, film.getName());
+                    statement.setString(2, film.getDescription());
+                    statement.setInt(3, film.getMpa().getId());
+                    statement.setObject(4, film.getReleaseDate());
+                    statement.setInt(5, film.getDuration());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        if (!keys.next()) {
+                            throw new SQLException("БД вернула меньше сгенерированных id, чем добавлено фильмов");
+                        }
+                        film.setId(keys.getLong(1));
+                        membershipFilters.addFilm(film.getId());
                     }
                 }
             }
-        }
-        film.setGenres(genresOfCurrentFilm);
-
-        return film;
+            return null;
+        });
     }
 
-    private void updateGenresAndLeaveOnlyUnique(Film film) {
-        if (film.getGenres() != null) {
-            Set<Integer> genresIdsSet = new TreeSet<>();
-            for (Genres genres : film.getGenres()) {
-                genresIdsSet.add(genres.getId());
+    private void insertFilmGenresBatch(List<Film> films) {
+        List<Object[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() == null) {
+                continue;
             }
 
-            Set<Genres> genresSet = new HashSet<>();
-            for (Genres genre : film.getGenres()) {
-                for (Integer genreId : genresIdsSet) {
-                    if (genre.getId() == genreId) {
-                        genresSet.add(genre);
-                    }
-                }
+            Set<Integer> genresIds = new TreeSet<>();
+            for (Genres genres : film.getGenres()) {
+                genresIds.add(genres.getId());
             }
-            List<Genres> genres = new ArrayList<>(genresSet);
-
-            Collections.sort(genres, (o1, o2) -> {
-                if (o1.getId() <= o2.getId()) {
-                    return -1;
-                } else {
-                    return 1;
-                }
-            });
-
-            String queryFilmsGenresInsert = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?);";
-            for (Genres genre : genres) {
-                jdbcTemplate.update(queryFilmsGenresInsert, film.getId(), genre.getId());
+            List<Genres> genres = new ArrayList<>();
+            for (Integer genreId : genresIds) {
+                genres.add(referenceData.getGenre(genreId));
+                filmGenres.add(new Object[]{film.getId(), genreId});
             }
             film.setGenres(genres);
         }
+
+        if (filmGenres.isEmpty()) {
+            return;
+        }
+
+        String queryFilmsGenresInsert = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?);";
+        jdbcTemplate.batchUpdate(queryFilmsGenresInsert, filmGenres);
     }
 
+    /**
+     * Проверяет все id одним запросом: найдено должно быть столько фильмов, сколько различных id передано.
+     */
     @Override
-    public boolean doesFilmExist(Long filmId) {
-        String queryFilmsSelect = "SELECT * " +
-                "FROM films " +
-                "WHERE film_id = ?;";
-        try {
-            jdbcTemplate.queryForObject(queryFilmsSelect, (rs, rowNum) -> mapRowToFilm(rs), filmId);
-        } catch (EmptyResultDataAccessException e) {
+    public boolean doFilmsExist(Long... receivedFilmsIds) {
+        Set<Long> ids = new HashSet<>(Arrays.asList(receivedFilmsIds));
+        if (ids.contains(null)) {
             return false;
         }
+        for (Long id : ids) {
+            if (!membershipFilters.mightContainFilm(id)) {
+                return false;
+            }
+        }
+        if (ids.isEmpty()) {
+            return true;
+        }
 
-        return true;
+        String queryFilmsSelect = "SELECT COUNT(*) FROM films " +
+                "WHERE film_id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ");";
+        Integer count = jdbcTemplate.queryForObject(queryFilmsSelect, Integer.class, ids.toArray());
+        return count != null && count == ids.size();
     }
 
     /**
@@ -392,5 +593,14 @@ public class FilmDbStorage implements FilmStorage {
 
         String queryFilmsDelete = "DELETE FROM films;";
         jdbcTemplate.update(queryFilmsDelete);
+
+        String queryFilmsIdRestart = "ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;";
+        jdbcTemplate.update(queryFilmsIdRestart);
+
+        filmLeaderboard.rebuild();
+        filmCache.invalidateAll();
+        membershipFilters.rebuildFilms();
+        likeGraph.rebuild();
+        trendingLikes.rebuild();
     }
 }
\ No newline at end of file
@@ -0,0 +1,384 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.util.LongList;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Рейтинг фильмов по числу лайков, который хранится в памяти и обновляется при каждом лайке.
+ * Чтение топа не берет блокировок: упорядоченный индекс (likes, filmId) обходится с начала.
+ * Кроме общего индекса, такой же индекс ведется для каждого жанра, рейтинга MPA и года выпуска,
+ * поэтому топ с фильтрами обходит только фильмы самого узкого из запрошенных срезов.
+ * <p>
+ * Все индексы собраны в один снимок. Перестроение собирает новый снимок в стороне и подменяет
+ * текущий одной записью volatile-поля, так что читатели не видят пустой или частично заполненный рейтинг.
+ * Число лайков приходит вместе с версией фильма (FILMS.LIKE_VERSION), которая растет при каждом изменении
+ * лайков в той же транзакции, поэтому изменение, уже учтенное в снимке или пришедшее не по порядку, отбрасывается.
+ */
+@Slf4j
+@Component
+public class FilmLeaderboard {
+    private static final int GENRE = 1;
+    private static final int MPA = 2;
+    private static final int YEAR = 3;
+    private static final long[] NO_FACETS = new long[0];
+    private static final int MAX_WALKS = 3;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+    private volatile Snapshot snapshot = new Snapshot();
+    // изменения, пришедшие во время перестроения; доступ под publishLock
+    private Queue<Consumer<Snapshot>> pendingChanges;
+
+    public FilmLeaderboard(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Строит новый снимок по БД. Изменения, пришедшие за время загрузки, применяются к текущему снимку
+     * и запоминаются, а перед публикацией повторяются на новом: уже учтенные при загрузке отсекаются по версии.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        publishLock.writeLock().lock();
+        try {
+            pendingChanges = new ConcurrentLinkedQueue<>();
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+
+        Snapshot rebuilt = null;
+        try {
+            rebuilt = load();
+        } finally {
+            publishLock.writeLock().lock();
+            try {
+                if (rebuilt != null) {
+                    for (Consumer<Snapshot> change : pendingChanges) {
+                        change.accept(rebuilt);
+                    }
+                    snapshot = rebuilt;
+                }
+                pendingChanges = null;
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+        }
+        log.info("Рейтинг популярных фильмов построен по {} фильмам.", rebuilt.entries.size());
+    }
+
+    /**
+     * Сверяет рейтинг с БД и возвращает число фильмов, у которых расходится количество лайков.
+     * Фильмы, изменившиеся после чтения из БД, не сравниваются; при любом расхождении рейтинг перестраивается.
+     */
+    public synchronized int verify() {
+        Map<Long, long[]> likesByFilm = loadLikesByFilm();
+        Snapshot current = snapshot;
+        Set<Long> filmIds = new HashSet<>(likesByFilm.keySet());
+        filmIds.addAll(current.entries.keySet());
+
+        int mismatches = 0;
+        for (Long filmId : filmIds) {
+            Entry entry = current.entries.get(filmId);
+            long[] likes = likesByFilm.get(filmId);
+            if (entry != null && likes != null && entry.version > likes[1]) {
+                continue;
+            }
+            if (entry == null || likes == null || entry.likes != likes[0]) {
+                log.warn("Рейтинг расходится с БД для фильма с id = {}: {} против {}.",
+                        filmId, entry == null ? null : entry.likes, likes == null ? null : likes[0]);
+                mismatches++;
+            }
+        }
+        if (mismatches > 0) {
+            rebuild();
+        }
+        return mismatches;
+    }
+
+    /**
+     * Добавляет фильм в рейтинг или, если он уже есть, переносит его в срезы по новым жанрам, рейтингу и году.
+     */
+    public void register(Film film) {
+        long filmId = film.getId();
+        long[] facets = facetsOf(film);
+        apply(current -> current.register(filmId, facets));
+    }
+
+    /**
+     * Устанавливает число лайков фильма, если версия новее той, что уже есть в рейтинге.
+     */
+    public void setLikes(long filmId, long likes, long version) {
+        apply(current -> current.setLikes(filmId, likes, version));
+    }
+
+    private void apply(Consumer<Snapshot> change) {
+        publishLock.readLock().lock();
+        try {
+            change.accept(snapshot);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает id count самых популярных фильмов: по убыванию лайков, при равенстве - по возрастанию id.
+     */
+    public List<Long> getTop(int count) {
+        Snapshot current = snapshot;
+        return walk(current.ranking, count, Math.min(count, current.entries.size()), filmId -> true);
+    }
+
+    /**
+     * Возвращает id count самых популярных фильмов, подходящих под все заданные фильтры (null - без фильтра).
+     * Обходится индекс самого малочисленного из запрошенных срезов, остальные фильтры проверяются по фильму.
+     */
+    public List<Long> getTop(int count, Integer genreId, Integer mpaId, Integer year) {
+        List<Long> filters = new ArrayList<>(3);
+        if (genreId != null) {
+            filters.add(facet(GENRE, genreId));
+        }
+        if (mpaId != null) {
+            filters.add(facet(MPA, mpaId));
+        }
+        if (year != null) {
+            filters.add(facet(YEAR, year));
+        }
+        if (filters.isEmpty()) {
+            return getTop(count);
+        }
+
+        Snapshot current = snapshot;
+        FacetRanking narrowest = null;
+        for (Long filter : filters) {
+            FacetRanking facetRanking = current.facetRankings.get(filter);
+            if (facetRanking == null) {
+                return List.of();
+            }
+            if (narrowest == null || facetRanking.size.get() < narrowest.size.get()) {
+                narrowest = facetRanking;
+            }
+        }
+
+        // сколько фильмов заведомо должно найтись, известно только для одного фильтра
+        int expected = filters.size() == 1 ? Math.min(count, narrowest.size.get()) : 0;
+        return walk(narrowest.entries, count, expected, filmId -> {
+            long[] facets = current.facetsByFilm.getOrDefault(filmId, NO_FACETS);
+            return filters.stream().allMatch(filter -> Arrays.binarySearch(facets, filter) >= 0);
+        });
+    }
+
+    /**
+     * Обходит индекс с начала и отбирает до count подходящих фильмов. Обход может пропустить фильм, который
+     * в этот момент переставляется выше текущей позиции; если найдено меньше expected фильмов, обход повторяется.
+     */
+    private static List<Long> walk(Set<Entry> ranking, int count, int expected, LongPredicate accepts) {
+        List<Long> filmIds = new ArrayList<>(expected);
+        Set<Long> seen = new HashSet<>();
+        for (int walk = 0; walk < MAX_WALKS; walk++) {
+            filmIds.clear();
+            seen.clear();
+            for (Entry entry : ranking) {
+                if (filmIds.size() == count) {
+                    break;
+                }
+                if (accepts.test(entry.filmId) && seen.add(entry.filmId)) {
+                    filmIds.add(entry.filmId);
+                }
+            }
+            if (filmIds.size() >= expected) {
+                break;
+            }
+        }
+        return filmIds;
+    }
+
+    private Snapshot load() {
+        Snapshot loaded = new Snapshot();
+        Map<Long, long[]> facetsByFilm = loadFacets();
+        loadLikesByFilm().forEach((filmId, likes) -> {
+            loaded.register(filmId, facetsByFilm.getOrDefault(filmId, NO_FACETS));
+            loaded.setLikes(filmId, likes[0], likes[1]);
+        });
+        return loaded;
+    }
+
+    /**
+     * Возвращает для каждого фильма пару {число лайков, версия}. Оба значения читаются из одной строки FILMS,
+     * поэтому число лайков всегда соответствует своей версии.
+     */
+    private Map<Long, long[]> loadLikesByFilm() {
+        Map<Long, long[]> likesByFilm = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, like_count, like_version FROM films;", rs -> {
+            likesByFilm.put(rs.getLong("film_id"), new long[]{rs.getLong("like_count"), rs.getLong("like_version")});
+        });
+        return likesByFilm;
+    }
+
+    private Map<Long, long[]> loadFacets() {
+        Map<Long, LongList> facetLists = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, mpa_id, release_date FROM films;", rs -> {
+            LongList facets = facetLists.computeIfAbsent(rs.getLong("film_id"), id -> new LongList());
+            facets.add(facet(MPA, rs.getInt("mpa_id")));
+            LocalDate releaseDate = rs.getObject("release_date", LocalDate.class);
+            if (releaseDate != null) {
+                facets.add(facet(YEAR, releaseDate.getYear()));
+            }
+        });
+        jdbcTemplate.query("SELECT DISTINCT film_id, genre_id FROM film_genres;", rs -> {
+            facetLists.computeIfAbsent(rs.getLong("film_id"), id -> new LongList())
+                    .add(facet(GENRE, rs.getInt("genre_id")));
+        });
+
+        Map<Long, long[]> facets = new HashMap<>();
+        facetLists.forEach((filmId, list) -> facets.put(filmId, list.toSortedArray()));
+        return facets;
+    }
+
+    private static long[] facetsOf(Film film) {
+        LongList facets = new LongList();
+        if (film.getMpa() != null) {
+            facets.add(facet(MPA, film.getMpa().getId()));
+        }
+        if (film.getReleaseDate() != null) {
+            facets.add(facet(YEAR, film.getReleaseDate().getYear()));
+        }
+        if (film.getGenres() != null) {
+            film.getGenres().stream()
+                    .filter(Objects::nonNull)
+                    .mapToInt(Genres::getId)
+                    .distinct()
+                    .forEach(genreId -> facets.add(facet(GENRE, genreId)));
+        }
+        return facets.toSortedArray();
+    }
+
+    /**
+     * Ключ среза: вид (жанр, рейтинг или год) в старших 32 битах, значение - в младших.
+     */
+    private static long facet(int kind, int value) {
+        return (long) kind << 32 | (value & 0xffffffffL);
+    }
+
+    /**
+     * Общий индекс, индексы срезов и срезы каждого фильма; публикуется целиком и меняется только на месте.
+     */
+    private static final class Snapshot {
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+        private final Set<Entry> ranking = new ConcurrentSkipListSet<>();
+        private final Map<Long, long[]> facetsByFilm = new ConcurrentHashMap<>();
+        private final Map<Long, FacetRanking> facetRankings = new ConcurrentHashMap<>();
+
+        private void register(long filmId, long[] newFacets) {
+            entries.compute(filmId, (id, oldEntry) -> {
+                Entry entry = oldEntry == null ? new Entry(id, 0, 0) : oldEntry;
+                long[] oldFacets = facetsByFilm.getOrDefault(id, NO_FACETS);
+                for (long facet : newFacets) {
+                    if (Arrays.binarySearch(oldFacets, facet) < 0) {
+                        facetRankings.computeIfAbsent(facet, key -> new FacetRanking()).add(entry);
+                    }
+                }
+                for (long facet : oldFacets) {
+                    if (Arrays.binarySearch(newFacets, facet) < 0) {
+                        facetRankings.get(facet).remove(entry);
+                    }
+                }
+                facetsByFilm.put(id, newFacets);
+                ranking.add(entry);
+                return entry;
+            });
+        }
+
+        private void setLikes(long filmId, long likes, long version) {
+            entries.compute(filmId, (id, oldEntry) -> {
+                if (oldEntry != null && oldEntry.version >= version) {
+                    return oldEntry;
+                }
+                Entry newEntry = new Entry(id, likes, version);
+                long[] facets = facetsByFilm.getOrDefault(id, NO_FACETS);
+                // новая запись добавляется раньше удаления старой, чтобы читатель не потерял фильм
+                ranking.add(newEntry);
+                for (long facet : facets) {
+                    facetRankings.get(facet).entries.add(newEntry);
+                }
+                if (oldEntry != null && !oldEntry.equals(newEntry)) {
+                    ranking.remove(oldEntry);
+                    for (long facet : facets) {
+                        facetRankings.get(facet).entries.remove(oldEntry);
+                    }
+                }
+                return newEntry;
+            });
+        }
+    }
+
+    /**
+     * Упорядоченный индекс одного среза и число фильмов в нем (размер ConcurrentSkipListSet считается за O(n)).
+     */
+    private static final class FacetRanking {
+        private final Set<Entry> entries = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private void add(Entry entry) {
+            entries.add(entry);
+            size.incrementAndGet();
+        }
+
+        private void remove(Entry entry) {
+            entries.remove(entry);
+            size.decrementAndGet();
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final long filmId;
+        private final long likes;
+        private final long version;
+
+        private Entry(long filmId, long likes, long version) {
+            this.filmId = filmId;
+            this.likes = likes;
+            this.version = version;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byLikes = Long.compare(other.likes, likes);
+            return byLikes != 0 ? byLikes : Long.compare(filmId, other.filmId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return filmId == entry.filmId && likes == entry.likes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filmId, likes);
+        }
+    }
+}
@@ -1,12 +1,60 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
 import ru.yandex.practicum.filmorate.storage.Storage;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface FilmStorage extends Storage<Film> {
+    /**
+     * Возвращает фильмы с указанными id в порядке переданных id; отсутствующие id пропускаются.
+     */
+    List<Film> getByIds(Collection<Long> ids);
+
     Film putLike(Long id, Long userId);
 
+    List<Film> getPopular(int count);
+
+    /**
+     * Возвращает count самых популярных фильмов с заданными жанром, рейтингом MPA и годом выпуска;
+     * null в фильтре означает, что по нему фильмы не отбираются.
+     */
+    List<Film> getPopular(int count, Integer genreId, Integer mpaId, Integer year);
+
     Film deleteLike(Long id, Long userId);
 
-    boolean doesFilmExist(Long filmId);
+    boolean doFilmsExist(Long... receivedFilmsIds);
+
+    /**
+     * Возвращает до limit id фильмов, которые чаще всего лайкали пользователи, лайкнувшие данный фильм.
+     */
+    long[] getAlsoLikedIds(Long id, int limit);
+
+    /**
+     * Возвращает до limit id фильмов, которые лайкнули пользователи с похожими лайками, а сам пользователь - нет.
+     */
+    long[] getRecommendedIds(Long userId, int limit);
+
+    /**
+     * Возвращает до limit id фильмов, которые лайкнули друзья пользователя: выше те, что лайкнуло больше друзей.
+     *
+     * @param friendIds отсортированные id друзей пользователя
+     */
+    long[] getFeedIds(Long userId, long[] friendIds, int limit);
+
+    /**
+     * Возвращает до limit id фильмов с наибольшим числом лайков за последнее окно времени.
+     */
+    long[] getTrendingIds(TrendingWindow window, int limit);
+
+    void export(Consumer<Film> consumer);
+
+    /**
+     * Добавляет фильмы пакетом. Результаты возвращаются в порядке входного списка,
+     * ошибка одного фильма не отменяет добавление остальных.
+     */
+    List<FilmImportResult> createAll(List<Film> films);
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Лента фильмов, которые недавно лайкнули друзья пользователя. Реализация выбирается свойством
+ * filmorate.feed.strategy: read - лайки друзей сливаются при запросе, write - каждый лайк сразу
+ * раскладывается по буферам лент друзей лайкнувшего.
+ */
+public interface FriendFeed extends LikeListener {
+    /**
+     * Возвращает до limit id фильмов: выше те, что лайкнуло больше друзей, при равенстве - лайкнутые позже.
+     *
+     * @param friendIds отсортированные id текущих друзей пользователя
+     */
+    long[] getFeed(long userId, long[] friendIds, int limit);
+}
@@ -4,17 +4,29 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.util.TopK;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component("inMemoryFilmStorage")
 @Slf4j
 public class InMemoryFilmStorage implements FilmStorage {
     private long id = 1;
     private final Map<Long, Film> films = new HashMap<>();
+    private final Map<Long, Map<Long, Instant>> likeTimes = new HashMap<>();
 
     @Override
     public Film create(Film film) {
@@ -25,6 +37,15 @@ public class InMemoryFilmStorage implements FilmStorage {
         return film;
     }
 
+    @Override
+    public List<FilmImportResult> createAll(List<Film> films) {
+        List<FilmImportResult> results = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            results.add(FilmImportResult.created(i, create(films.get(i)).getId()));
+        }
+        return results;
+    }
+
     @Override
     public Film update(Film film) {
         Film filmWithOldParams = films.get(film.getId());
@@ -55,29 +76,162 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.get(id);
     }
 
+    @Override
+    public List<Film> getByIds(Collection<Long> ids) {
+        log.info("Получение фильмов с id {}.", ids);
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> get(Long after, int limit) {
+        log.info("Получение {} фильмов с id больше {}.", limit, after);
+        return films.values().stream()
+                .filter(film -> film.getId() > after)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Map<Long, Film> getValues() {
         Map<Long, Film> copyOfFilms = new HashMap<>(films);
         return copyOfFilms;
     }
 
+    @Override
+    public List<Film> getPopular(int count) {
+        log.info("Получение {} фильмов с наибольшим числом лайков.", count);
+        return films.values().stream()
+                .sorted(Comparator.comparing(Film::getAllLikesCount).reversed().thenComparing(Film::getId))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getPopular(int count, Integer genreId, Integer mpaId, Integer year) {
+        log.info("Получение {} фильмов с наибольшим числом лайков: жанр {}, рейтинг {}, год {}.",
+                count, genreId, mpaId, year);
+        return films.values().stream()
+                .filter(film -> genreId == null || (film.getGenres() != null && film.getGenres().stream()
+                        .anyMatch(genre -> genre != null && genre.getId() == genreId)))
+                .filter(film -> mpaId == null || (film.getMpa() != null && film.getMpa().getId() == mpaId))
+                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
+                .sorted(Comparator.comparing(Film::getAllLikesCount).reversed().thenComparing(Film::getId))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
     public Film putLike(Long id, Long userId) {
         Film film = films.get(id);
         film.addUserLike(userId);
+        likeTimes.computeIfAbsent(id, filmId -> new HashMap<>()).putIfAbsent(userId, Instant.now());
         return film;
     }
 
     public Film deleteLike(Long id, Long userId) {
         Film film = films.get(id);
         film.deleteUserLike(userId);
+        likeTimes.getOrDefault(id, new HashMap<>()).remove(userId);
         return film;
     }
 
     @Override
-    public boolean doesFilmExist(Long filmId) {
-        if (films.containsKey(filmId)) {
-            return true;
+    public void export(Consumer<Film> consumer) {
+        log.info("Выгрузка всех фильмов.");
+        films.values().stream()
+                .sorted(Comparator.comparing(Film::getId))
+                .forEach(consumer);
+    }
+
+    @Override
+    public long[] getAlsoLikedIds(Long id, int limit) {
+        Set<Long> userLikes = films.get(id).getUserLikes();
+        TopK topK = new TopK(limit);
+        for (Film film : films.values()) {
+            if (film.getId().equals(id)) {
+                continue;
+            }
+            long commonLikes = film.getUserLikes().stream().filter(userLikes::contains).count();
+            if (commonLikes > 0) {
+                topK.offer(film.getId(), commonLikes);
+            }
+        }
+        return topK.toSortedArray();
+    }
+
+    /**
+     * Перебирает всех пользователей: сходство - доля общих лайков (Жаккар), вес фильма - сумма
+     * сходств лайкнувших его пользователей.
+     */
+    @Override
+    public long[] getRecommendedIds(Long userId, int limit) {
+        Map<Long, Set<Long>> likedFilms = new HashMap<>();
+        for (Film film : films.values()) {
+            for (Long likerId : film.getUserLikes()) {
+                likedFilms.computeIfAbsent(likerId, id -> new HashSet<>()).add(film.getId());
+            }
+        }
+        Set<Long> userFilms = likedFilms.getOrDefault(userId, Set.of());
+
+        Map<Long, Double> scores = new HashMap<>();
+        likedFilms.forEach((otherUserId, otherFilms) -> {
+            long common = otherFilms.stream().filter(userFilms::contains).count();
+            if (otherUserId.equals(userId) || common == 0) {
+                return;
+            }
+            double similarity = (double) common / (userFilms.size() + otherFilms.size() - common);
+            for (Long filmId : otherFilms) {
+                if (!userFilms.contains(filmId)) {
+                    scores.merge(filmId, similarity, Double::sum);
+                }
+            }
+        });
+
+        TopK topK = new TopK(limit);
+        scores.forEach((filmId, score) -> topK.offer(filmId, Math.round(score * 1_000_000)));
+        return topK.toSortedArray();
+    }
+
+    /**
+     * Порядок лайков в памяти не хранится, поэтому при равном числе друзей выше фильм с меньшим id.
+     */
+    @Override
+    public long[] getFeedIds(Long userId, long[] friendIds, int limit) {
+        TopK topK = new TopK(limit);
+        for (Film film : films.values()) {
+            long friendLikes = film.getUserLikes().stream()
+                    .filter(likerId -> Arrays.binarySearch(friendIds, likerId) >= 0)
+                    .count();
+            if (friendLikes > 0) {
+                topK.offer(film.getId(), friendLikes);
+            }
+        }
+        return topK.toSortedArray();
+    }
+
+    @Override
+    public long[] getTrendingIds(TrendingWindow window, int limit) {
+        Instant since = Instant.now().minus(window.getDuration());
+        TopK topK = new TopK(limit);
+        likeTimes.forEach((filmId, times) -> {
+            long likes = times.values().stream().filter(since::isBefore).count();
+            if (likes > 0) {
+                topK.offer(filmId, likes);
+            }
+        });
+        return topK.toSortedArray();
+    }
+
+    @Override
+    public boolean doFilmsExist(Long... receivedFilmsIds) {
+        for (Long filmId : receivedFilmsIds) {
+            if (!films.containsKey(filmId)) {
+                return false;
+            }
         }
-        return false;
+        return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongList;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Лайки в памяти в обе стороны: для пользователя - отсортированный массив id понравившихся фильмов,
+ * для фильма - отсортированный массив id лайкнувших пользователей. Как и в графе дружбы, массивы
+ * не изменяются после публикации, изменения заменяют их целиком. Каждое изменение передается
+ * слушателям LikeListener, которые строят на лайках свои индексы.
+ */
+@Slf4j
+@Component
+public class LikeGraph {
+    private static final long[] EMPTY = new long[0];
+    private final JdbcTemplate jdbcTemplate;
+    private final List<LikeListener> listeners;
+    private final Map<Long, long[]> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> usersByFilm = new ConcurrentHashMap<>();
+
+    public LikeGraph(JdbcTemplate jdbcTemplate, List<LikeListener> listeners) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listeners = listeners;
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        Map<Long, LongList> filmLists = new HashMap<>();
+        Map<Long, LongList> userLists = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, film_id FROM user_likes;", rs -> {
+            long userId = rs.getLong("user_id");
+            long filmId = rs.getLong("film_id");
+            filmLists.computeIfAbsent(userId, id -> new LongList()).add(filmId);
+            userLists.computeIfAbsent(filmId, id -> new LongList()).add(userId);
+        });
+
+        filmsByUser.clear();
+        usersByFilm.clear();
+        filmLists.forEach((userId, list) -> filmsByUser.put(userId, list.toSortedArray()));
+        userLists.forEach((filmId, list) -> usersByFilm.put(filmId, list.toSortedArray()));
+        log.info("Граф лайков построен: {} пользователей, {} фильмов.", filmsByUser.size(), usersByFilm.size());
+
+        for (LikeListener listener : listeners) {
+            listener.onRebuild(this);
+        }
+    }
+
+    public synchronized void addLike(long filmId, long userId) {
+        long[] films = filmsByUser.getOrDefault(userId, EMPTY);
+        if (Arrays.binarySearch(films, filmId) >= 0) {
+            return;
+        }
+
+        filmsByUser.put(userId, SortedLongArrays.insert(films, filmId));
+        usersByFilm.put(filmId, SortedLongArrays.insert(usersByFilm.getOrDefault(filmId, EMPTY), userId));
+        for (LikeListener listener : listeners) {
+            listener.onLike(filmId, userId, films);
+        }
+    }
+
+    public synchronized void removeLike(long filmId, long userId) {
+        long[] films = filmsByUser.getOrDefault(userId, EMPTY);
+        if (Arrays.binarySearch(films, filmId) < 0) {
+            return;
+        }
+
+        long[] otherFilms = SortedLongArrays.remove(films, filmId);
+        SortedLongArrays.putOrRemove(filmsByUser, userId, otherFilms);
+        long[] otherUsers = SortedLongArrays.remove(usersByFilm.getOrDefault(filmId, EMPTY), userId);
+        SortedLongArrays.putOrRemove(usersByFilm, filmId, otherUsers);
+        for (LikeListener listener : listeners) {
+            listener.onUnlike(filmId, userId, otherFilms);
+        }
+    }
+
+    /**
+     * Возвращает отсортированные id фильмов, которые лайкнул пользователь. Массив нельзя изменять.
+     */
+    public long[] getLikedFilms(long userId) {
+        return filmsByUser.getOrDefault(userId, EMPTY);
+    }
+
+    /**
+     * Возвращает отсортированные id пользователей, лайкнувших фильм. Массив нельзя изменять.
+     */
+    public long[] getLikers(long filmId) {
+        return usersByFilm.getOrDefault(filmId, EMPTY);
+    }
+
+    public long[] getFilmIds() {
+        return usersByFilm.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    public long[] getUserIds() {
+        return filmsByUser.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Получает изменения лайков из LikeGraph. Вызовы идут после фиксации транзакции и строго по одному,
+ * поэтому реализациям не нужно синхронизировать изменения между собой.
+ */
+public interface LikeListener {
+    /**
+     * @param otherFilmIds остальные фильмы, которые лайкнул пользователь (отсортированы, без filmId)
+     */
+    void onLike(long filmId, long userId, long[] otherFilmIds);
+
+    /**
+     * @param otherFilmIds фильмы, которые остались лайкнутыми у пользователя (отсортированы, без filmId)
+     */
+    void onUnlike(long filmId, long userId, long[] otherFilmIds);
+
+    /**
+     * Вызывается после полного перестроения графа: слушатель строит свое состояние заново.
+     */
+    void onRebuild(LikeGraph likeGraph);
+}
@@ -0,0 +1,277 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.Hashing;
+import ru.yandex.practicum.filmorate.util.LongIntCounter;
+import ru.yandex.practicum.filmorate.util.LongList;
+import ru.yandex.practicum.filmorate.util.LongLongMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс похожих по лайкам пользователей для персональных рекомендаций фильмов.
+ * Для каждого пользователя хранится MinHash-подпись множества лайкнутых фильмов (SIGNATURE_SIZE минимумов
+ * по разным хэш-функциям), подпись разбита на BANDS полос по ROWS строк, и пользователи с совпадающей полосой
+ * попадают в одну корзину LSH. Полоса из четырех строк совпадает с вероятностью J^4 при сходстве Жаккара J,
+ * поэтому случайные соседи по одному популярному фильму почти не попадают в общие корзины, а число общих
+ * полос растет вместе со сходством: по нему кандидаты и упорядочиваются, точное сходство считается только
+ * для первых maxCandidates из них.
+ * <p>
+ * Корзина - отсортированный массив id размером не больше maxBucketSize; в переполненной корзине
+ * остаются пользователи с меньшими id, поэтому ее содержимое не зависит от порядка лайков.
+ */
+@Slf4j
+@Component
+public class LikeSimilarityIndex implements LikeListener {
+    private static final int SIGNATURE_SIZE = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = SIGNATURE_SIZE / BANDS;
+    private static final int MAX_CANDIDATES = 1000;
+    private static final int MAX_BUCKET_SIZE = 256;
+    private static final int MAX_NEIGHBOURS = 50;
+    private static final int SIMILARITY_SCALE = 1_000_000;
+    private static final long[] SEEDS = new Random(20_230_401L).longs(SIGNATURE_SIZE).toArray();
+    private final int maxCandidates;
+    private final int maxBucketSize;
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile LikeGraph likeGraph;
+
+    public LikeSimilarityIndex() {
+        this(MAX_CANDIDATES, MAX_BUCKET_SIZE);
+    }
+
+    public LikeSimilarityIndex(int maxCandidates, int maxBucketSize) {
+        this.maxCandidates = maxCandidates;
+        this.maxBucketSize = maxBucketSize;
+    }
+
+    /**
+     * Возвращает до limit id фильмов, которые лайкнули самые похожие на пользователя пользователи,
+     * а он сам еще не лайкнул. Вес фильма - сумма сходств Жаккара лайкнувших его соседей.
+     */
+    public long[] recommend(long userId, int limit) {
+        LikeGraph graph = likeGraph;
+        long[] likedFilms = graph == null ? new long[0] : graph.getLikedFilms(userId);
+        if (likedFilms.length == 0) {
+            return new long[0];
+        }
+
+        TopK neighbours = new TopK(MAX_NEIGHBOURS);
+        LongLongMap similarities = new LongLongMap(MAX_NEIGHBOURS);
+        for (long candidateId : findCandidates(userId, likedFilms, graph)) {
+            long similarity = similarity(likedFilms, graph.getLikedFilms(candidateId));
+            if (similarity > 0) {
+                neighbours.offer(candidateId, similarity);
+                similarities.put(candidateId, similarity);
+            }
+        }
+
+        LongIntCounter filmScores = new LongIntCounter();
+        for (long neighbourId : neighbours.toSortedArray()) {
+            int similarity = (int) similarities.get(neighbourId, 0);
+            for (long filmId : graph.getLikedFilms(neighbourId)) {
+                if (Arrays.binarySearch(likedFilms, filmId) < 0) {
+                    filmScores.add(filmId, similarity);
+                }
+            }
+        }
+
+        TopK films = new TopK(limit);
+        filmScores.forEach(films::offer);
+        return films.toSortedArray();
+    }
+
+    @Override
+    public void onLike(long filmId, long userId, long[] otherFilmIds) {
+        int[] oldSignature = snapshot.signatures.get(userId);
+        int[] newSignature = oldSignature == null ? emptySignature() : oldSignature.clone();
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            newSignature[i] = Math.min(newSignature[i], hash(filmId, i));
+        }
+        replaceSignature(userId, oldSignature, newSignature);
+    }
+
+    /**
+     * Минимум нельзя "откатить", поэтому подпись пересчитывается по оставшимся лайкам пользователя.
+     */
+    @Override
+    public void onUnlike(long filmId, long userId, long[] otherFilmIds) {
+        int[] oldSignature = snapshot.signatures.get(userId);
+        replaceSignature(userId, oldSignature, otherFilmIds.length == 0 ? null : signatureOf(otherFilmIds));
+    }
+
+    /**
+     * Новый индекс строится в стороне и подменяет текущий целиком: подписи считаются параллельно,
+     * корзины собираются полностью и только затем обрезаются до maxBucketSize.
+     */
+    @Override
+    public void onRebuild(LikeGraph likeGraph) {
+        Snapshot rebuilt = new Snapshot();
+        Arrays.stream(likeGraph.getUserIds()).parallel().forEach(userId -> {
+            rebuilt.signatures.put(userId, signatureOf(likeGraph.getLikedFilms(userId)));
+        });
+
+        Map<Long, LongList> bucketLists = new HashMap<>();
+        rebuilt.signatures.forEach((userId, signature) -> {
+            for (int band = 0; band < BANDS; band++) {
+                bucketLists.computeIfAbsent(bandKey(signature, band), key -> new LongList()).add(userId);
+            }
+        });
+        bucketLists.forEach((key, users) -> {
+            long[] bucket = users.toSortedArray();
+            rebuilt.buckets.put(key, bucket.length > maxBucketSize ? Arrays.copyOf(bucket, maxBucketSize) : bucket);
+        });
+        snapshot = rebuilt;
+        this.likeGraph = likeGraph;
+        log.info("Индекс похожих по лайкам пользователей построен: {} пользователей, {} корзин.",
+                rebuilt.signatures.size(), rebuilt.buckets.size());
+    }
+
+    /**
+     * Кандидаты - пользователи из общих корзин LSH в порядке убывания числа общих полос (при равенстве -
+     * по возрастанию id). Если их меньше maxCandidates (мало данных или редкие вкусы), список дополняется
+     * пользователями, лайкнувшими те же фильмы.
+     */
+    private long[] findCandidates(long userId, long[] likedFilms, LikeGraph graph) {
+        LongIntCounter sharedBands = new LongIntCounter(BANDS * 16);
+        Snapshot current = snapshot;
+        int[] signature = current.signatures.get(userId);
+        if (signature != null) {
+            for (int band = 0; band < BANDS; band++) {
+                long[] bucket = current.buckets.get(bandKey(signature, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (long candidateId : bucket) {
+                    if (candidateId != userId) {
+                        sharedBands.increment(candidateId);
+                    }
+                }
+            }
+        }
+        TopK closest = new TopK(maxCandidates);
+        sharedBands.forEach(closest::offer);
+
+        LongList candidates = new LongList();
+        for (long candidateId : closest.toSortedArray()) {
+            candidates.add(candidateId);
+        }
+        for (int i = 0; i < likedFilms.length && candidates.size() < maxCandidates; i++) {
+            for (long candidateId : graph.getLikers(likedFilms[i])) {
+                if (candidates.size() == maxCandidates) {
+                    break;
+                }
+                if (candidateId != userId && sharedBands.get(candidateId) == 0) {
+                    sharedBands.increment(candidateId);
+                    candidates.add(candidateId);
+                }
+            }
+        }
+        return candidates.toArray();
+    }
+
+    private void replaceSignature(long userId, int[] oldSignature, int[] newSignature) {
+        Snapshot current = snapshot;
+        Map<Long, int[]> signatures = current.signatures;
+        Map<Long, long[]> buckets = current.buckets;
+        for (int band = 0; band < BANDS; band++) {
+            Long oldKey = oldSignature == null ? null : bandKey(oldSignature, band);
+            Long newKey = newSignature == null ? null : bandKey(newSignature, band);
+            if (oldKey != null && oldKey.equals(newKey)) {
+                continue;
+            }
+            if (newKey != null) {
+                buckets.compute(newKey, (key, bucket) -> withUser(bucket, userId));
+            }
+            if (oldKey != null) {
+                buckets.computeIfPresent(oldKey, (key, bucket) -> withoutUser(bucket, userId));
+            }
+        }
+        if (newSignature == null) {
+            signatures.remove(userId);
+        } else {
+            signatures.put(userId, newSignature);
+        }
+    }
+
+    /**
+     * Возвращает корзину с добавленным пользователем; в полной корзине он вытесняет пользователя с наибольшим id
+     * или, если его id больше всех, не добавляется.
+     */
+    private long[] withUser(long[] bucket, long userId) {
+        if (bucket == null) {
+            return new long[]{userId};
+        }
+        long[] result = SortedLongArrays.insert(bucket, userId);
+        return result.length > maxBucketSize ? Arrays.copyOf(result, maxBucketSize) : result;
+    }
+
+    private static long[] withoutUser(long[] bucket, long userId) {
+        long[] result = SortedLongArrays.remove(bucket, userId);
+        return result.length == 0 ? null : result;
+    }
+
+    /**
+     * Сходство Жаккара двух отсортированных множеств, умноженное на SIMILARITY_SCALE.
+     */
+    private static long similarity(long[] first, long[] second) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return (long) common * SIMILARITY_SCALE / (first.length + second.length - common);
+    }
+
+    private static int[] signatureOf(long[] filmIds) {
+        int[] signature = emptySignature();
+        for (long filmId : filmIds) {
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                signature[i] = Math.min(signature[i], hash(filmId, i));
+            }
+        }
+        return signature;
+    }
+
+    private static int[] emptySignature() {
+        int[] signature = new int[SIGNATURE_SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        return signature;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = key * 0x100000001b3L + signature[i];
+        }
+        return Hashing.mix(key);
+    }
+
+    private static int hash(long filmId, int function) {
+        return (int) (Hashing.mix(filmId ^ SEEDS[function]) >>> 33);
+    }
+
+    /**
+     * Подписи и корзины одного поколения индекса; перестроение подменяет их вместе.
+     */
+    private static final class Snapshot {
+        private final Map<Long, int[]> signatures = new ConcurrentHashMap<>();
+        private final Map<Long, long[]> buckets = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.TopK;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Счетчики лайков за последние час, сутки и неделю по каждому фильму. У фильма есть кольцевой буфер
+ * минутных корзин на час и часовых корзин на неделю, а также текущие суммы по каждому окну. Когда время
+ * переходит в следующую корзину, она обнуляется, а выпавшие из окон корзины вычитаются из сумм, поэтому
+ * запрос трендов - это отбор топа по готовым суммам без обращения к истории лайков.
+ * Буферы сдвигаются при каждом обращении к фильму и раз в минуту планировщиком, который заодно
+ * убирает фильмы без лайков за неделю.
+ */
+@Slf4j
+@Component
+public class TrendingLikes {
+    private static final int MINUTES = 60;
+    private static final int HOURS = 7 * 24;
+    private static final int DAY_HOURS = 24;
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+
+    public TrendingLikes(JdbcTemplate jdbcTemplate, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+    }
+
+    /**
+     * Загружает лайки за последнюю неделю; лайки без LIKED_AT (поставленные до появления колонки) не учитываются.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        Instant now = clock.instant();
+        counters.clear();
+        jdbcTemplate.query("SELECT film_id, liked_at FROM user_likes WHERE liked_at >= ?;", rs -> {
+            Instant likedAt = rs.getObject("liked_at", OffsetDateTime.class).toInstant();
+            change(rs.getLong("film_id"), likedAt, 1, now);
+        }, OffsetDateTime.ofInstant(now.minus(Duration.ofHours(HOURS)), clock.getZone()));
+        log.info("Счетчики трендовых фильмов построены для {} фильмов.", counters.size());
+    }
+
+    public void addLike(long filmId, Instant likedAt) {
+        change(filmId, likedAt, 1, clock.instant());
+    }
+
+    public void removeLike(long filmId, Instant likedAt) {
+        change(filmId, likedAt, -1, clock.instant());
+    }
+
+    /**
+     * Возвращает до limit id фильмов с наибольшим числом лайков за окно, при равенстве - с меньшим id.
+     */
+    public long[] getTop(TrendingWindow window, int limit) {
+        long minute = epochMinute(clock.instant());
+        TopK films = new TopK(limit);
+        counters.forEach((filmId, filmCounters) -> {
+            int likes = filmCounters.get(window, minute);
+            if (likes > 0) {
+                films.offer(filmId, likes);
+            }
+        });
+        return films.toSortedArray();
+    }
+
+    @Scheduled(fixedRate = 60_000)
+    public void roll() {
+        long minute = epochMinute(clock.instant());
+        for (Long filmId : counters.keySet()) {
+            counters.computeIfPresent(filmId, (id, filmCounters) -> filmCounters.advance(minute) ? filmCounters : null);
+        }
+    }
+
+    private void change(long filmId, Instant likedAt, int delta, Instant now) {
+        long minute = epochMinute(now);
+        long likedMinute = Math.min(epochMinute(likedAt), minute);
+        if (minute - likedMinute >= (long) HOURS * MINUTES) {
+            return;
+        }
+        counters.compute(filmId, (id, filmCounters) -> {
+            Counters result = filmCounters == null ? new Counters(minute) : filmCounters;
+            result.advance(minute);
+            result.add(likedMinute, delta);
+            return result.isEmpty() ? null : result;
+        });
+    }
+
+    private static long epochMinute(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), 60);
+    }
+
+    private static final class Counters {
+        private final int[] minutes = new int[MINUTES];
+        private final int[] hours = new int[HOURS];
+        private long minute;
+        private long hour;
+        private int hourSum;
+        private int daySum;
+        private int weekSum;
+
+        private Counters(long minute) {
+            this.minute = minute;
+            this.hour = Math.floorDiv(minute, MINUTES);
+        }
+
+        /**
+         * Сдвигает буферы к текущей минуте; возвращает false, если за неделю у фильма не осталось лайков.
+         */
+        private synchronized boolean advance(long now) {
+            if (now - minute >= MINUTES) {
+                Arrays.fill(minutes, 0);
+                hourSum = 0;
+            } else {
+                for (long next = minute + 1; next <= now; next++) {
+                    int index = (int) Math.floorMod(next, MINUTES);
+                    hourSum -= minutes[index];
+                    minutes[index] = 0;
+                }
+            }
+            minute = Math.max(minute, now);
+
+            long nowHour = Math.floorDiv(now, MINUTES);
+            if (nowHour - hour >= HOURS) {
+                Arrays.fill(hours, 0);
+                daySum = 0;
+                weekSum = 0;
+            } else {
+                for (long next = hour + 1; next <= nowHour; next++) {
+                    daySum -= hours[(int) Math.floorMod(next - DAY_HOURS, HOURS)];
+                    int index = (int) Math.floorMod(next, HOURS);
+                    weekSum -= hours[index];
+                    hours[index] = 0;
+                }
+            }
+            hour = Math.max(hour, nowHour);
+            return !isEmpty();
+        }
+
+        private synchronized void add(long likedMinute, int delta) {
+            if (minute - likedMinute < MINUTES) {
+                minutes[(int) Math.floorMod(likedMinute, MINUTES)] += delta;
+                hourSum += delta;
+            }
+            long likedHour = Math.floorDiv(likedMinute, MINUTES);
+            if (hour - likedHour < HOURS) {
+                hours[(int) Math.floorMod(likedHour, HOURS)] += delta;
+                weekSum += delta;
+                if (hour - likedHour < DAY_HOURS) {
+                    daySum += delta;
+                }
+            }
+        }
+
+        private synchronized int get(TrendingWindow window, long now) {
+            advance(now);
+            switch (window) {
+                case HOUR:
+                    return hourSum;
+                case DAY:
+                    return daySum;
+                default:
+                    return weekSum;
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            return weekSum <= 0 && hourSum <= 0;
+        }
+    }
+}
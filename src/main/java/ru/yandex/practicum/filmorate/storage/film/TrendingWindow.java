@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Окна, за которые считаются лайки трендовых фильмов. Час собирается из минутных корзин,
+ * сутки и неделя - из часовых, поэтому граница окна точна до минуты и до часа соответственно.
+ */
+public enum TrendingWindow {
+    HOUR("1h", Duration.ofHours(1)),
+    DAY("24h", Duration.ofDays(1)),
+    WEEK("7d", Duration.ofDays(7));
+
+    private final String name;
+    private final Duration duration;
+
+    TrendingWindow(String name, Duration duration) {
+        this.name = name;
+        this.duration = duration;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Возвращает окно по его обозначению (1h, 24h, 7d) или null, если такого окна нет.
+     */
+    public static TrendingWindow of(String name) {
+        return Arrays.stream(values())
+                .filter(window -> window.name.equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    public static String names() {
+        return Arrays.stream(values())
+                .map(window -> window.name)
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -1,25 +1,27 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceData;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class GenreDbStorage implements GenreStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceData referenceData;
 
-    public GenreDbStorage(JdbcTemplate jdbcTemplate) {
+    public GenreDbStorage(JdbcTemplate jdbcTemplate, ReferenceData referenceData) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceData = referenceData;
     }
 
     @Override
@@ -27,6 +29,7 @@ public class GenreDbStorage implements GenreStorage {
         log.info("Создание нового жанра.");
         String queryMpaInsert = "INSERT INTO genres VALUES (?, ?);";
         jdbcTemplate.update(queryMpaInsert, genres.getId(), genres.getName());
+        TransactionCallbacks.afterCommit(referenceData::reload);
 
         return genres;
     }
@@ -34,69 +37,54 @@ public class GenreDbStorage implements GenreStorage {
     @Override
     public Genres update(Genres genres) {
         log.info("Изменение жанра с id = {}.", genres.getId());
-        String queryGenresSelect = "SELECT * FROM genres WHERE genre_id = ?;";
-
-        Genres existingGenres = jdbcTemplate.queryForObject(queryGenresSelect,
-                (rs, rowNum) -> mapRowToGenre(rs), genres.getId());
-        if (existingGenres == null) {
+        if (referenceData.getGenre(genres.getId()) == null) {
             throw new NoSuitableUnitException("Такого рейтинга нет в БД.");
         }
 
         String queryGenresUpdate = "UPDATE genres SET genre = ? WHERE genre_id = ?";
         jdbcTemplate.update(queryGenresUpdate, genres.getName(), genres.getId());
+        TransactionCallbacks.afterCommit(referenceData::reload);
 
         return genres;
     }
 
     @Override
     public List<Genres> get() {
-        log.info("Получение из БД всех жанров.");
-        String sql = "SELECT * " +
-                "FROM genres " +
-                "ORDER BY genre_id;";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToGenre(rs));
+        log.info("Получение всех жанров.");
+        return referenceData.getGenres();
     }
 
     @Override
     public Genres get(Long id) {
-        log.info("Получение из БД жанра c id = {}.", id);
-        String sql = "SELECT * " +
-                "FROM genres " +
-                "WHERE genre_id = ?";
-
-        try {
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapRowToGenre(rs), id);
-
-        } catch (RuntimeException e) {
+        log.info("Получение жанра c id = {}.", id);
+        Genres genres = referenceData.getGenre(id.intValue());
+        if (genres == null) {
             throw new NoSuitableUnitException("Жанра с таким id нет в БД");
         }
+        return genres;
+    }
+
+    @Override
+    public List<Genres> get(Long after, int limit) {
+        log.info("Получение {} жанров с id больше {}.", limit, after);
+        return referenceData.getGenres().stream()
+                .filter(genres -> genres.getId() > after)
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Map<Long, Genres> getValues() {
-        String queryGenresSelect = "SELECT * FROM genres";
-        List<Genres> genresList = jdbcTemplate.query(queryGenresSelect, (rs, rowNum) -> mapRowToGenre(rs));
         Map<Long, Genres> genresMap = new HashMap<>();
-        for (Genres genre : genresList) {
+        for (Genres genre : referenceData.getGenres()) {
             genresMap.put((long) genre.getId(), genre);
         }
         return genresMap;
     }
 
-    private Genres mapRowToGenre(ResultSet rs) throws SQLException {
-        return new Genres(
-                rs.getInt("genre_id"),
-                rs.getString("genre"));
-    }
-
     @Override
     public void checkGenreExististing(Long genreId) {
-        String queryGenreSelect = "SELECT * FROM genres WHERE genre_id = ?;";
-
-        try {
-            jdbcTemplate.queryForObject(queryGenreSelect, (rs, rowNum) -> mapRowToGenre(rs), genreId);
-        } catch (EmptyResultDataAccessException e) {
+        if (referenceData.getGenre(genreId.intValue()) == null) {
             throw new NoSuitableUnitException("Жанр с указанным id не существует!");
         }
     }
@@ -105,12 +93,12 @@ public class GenreDbStorage implements GenreStorage {
      * Метод, необходимый для тестирования
      */
     public void deleteLastGenres() {
-        String queryGenresSelect = "SELECT * FROM genres;";
-        List<Genres> allGenres = jdbcTemplate.query(queryGenresSelect, (rs, rowNum) -> mapRowToGenre(rs));
+        List<Genres> allGenres = referenceData.getGenres();
 
         Integer lastGenresId = allGenres.get(allGenres.size() - 1).getId();
 
         String queryGenresDelete = "DELETE FROM genres WHERE genre_id = ?";
         jdbcTemplate.update(queryGenresDelete, lastGenresId);
+        referenceData.reload();
     }
 }
\ No newline at end of file
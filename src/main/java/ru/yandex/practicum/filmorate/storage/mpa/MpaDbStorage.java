@@ -1,25 +1,27 @@
 package ru.yandex.practicum.filmorate.storage.mpa;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceData;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class MpaDbStorage implements MpaStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceData referenceData;
 
-    public MpaDbStorage(JdbcTemplate jdbcTemplate) {
+    public MpaDbStorage(JdbcTemplate jdbcTemplate, ReferenceData referenceData) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceData = referenceData;
     }
 
     @Override
@@ -27,6 +29,7 @@ public class MpaDbStorage implements MpaStorage {
         log.info("Создание нового рейтинга.");
         String queryMpaInsert = "INSERT INTO mpa VALUES (?, ?);";
         jdbcTemplate.update(queryMpaInsert, mpa.getId(), mpa.getName());
+        TransactionCallbacks.afterCommit(referenceData::reload);
 
         return mpa;
     }
@@ -34,52 +37,43 @@ public class MpaDbStorage implements MpaStorage {
     @Override
     public Mpa update(Mpa mpa) {
         log.info("Изменение рейтинга с id = {}.", mpa.getId());
-        String queryMpaSelect = "SELECT * FROM mpa WHERE mpa_id = ?;";
-
-        Mpa existingMpa = jdbcTemplate.queryForObject(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs), mpa.getId());
-        if (existingMpa == null) {
+        if (referenceData.getMpa(mpa.getId()) == null) {
             throw new NoSuitableUnitException("Такого рейтинга нет в БД.");
         }
 
         String queryMpaUpdate = "UPDATE mpa SET mpa = ? WHERE mpa_id = ?";
         jdbcTemplate.update(queryMpaUpdate, mpa.getName(), mpa.getId());
+        TransactionCallbacks.afterCommit(referenceData::reload);
 
         return mpa;
     }
 
     @Override
     public List<Mpa> get() {
-        log.info("Получение всех рейтингов из БД.");
-        String queryMpaSelect = "SELECT * " +
-                "FROM mpa " +
-                "ORDER BY mpa_id;";
-
-        return jdbcTemplate.query(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs));
+        log.info("Получение всех рейтингов.");
+        return referenceData.getMpa();
     }
 
     @Override
     public Mpa get(Long id) {
-        log.info("Получение рейтинга с id = {} из БД.", id);
+        log.info("Получение рейтинга с id = {}.", id);
         checkMpaExist(id);
-        String queryMpaSelect = "SELECT * " +
-                "FROM mpa " +
-                "WHERE mpa_id = ?;";
-
-        return jdbcTemplate.queryForObject(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs), id);
+        return referenceData.getMpa(id.intValue());
     }
 
-    private Mpa mapRowToMpa(ResultSet rs) throws SQLException {
-        return new Mpa(
-                rs.getInt("mpa_id"),
-                rs.getString("mpa"));
+    @Override
+    public List<Mpa> get(Long after, int limit) {
+        log.info("Получение {} рейтингов с id больше {}.", limit, after);
+        return referenceData.getMpa().stream()
+                .filter(mpa -> mpa.getId() > after)
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Map<Long, Mpa> getValues() {
-        String queryMpaSelect = "SELECT * FROM mpa";
-        List<Mpa> mpaList = jdbcTemplate.query(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs));
         Map<Long, Mpa> mpaMap = new HashMap<>();
-        for (Mpa mpa : mpaList) {
+        for (Mpa mpa : referenceData.getMpa()) {
             mpaMap.put((long) mpa.getId(), mpa);
         }
         return mpaMap;
@@ -87,11 +81,7 @@ public class MpaDbStorage implements MpaStorage {
 
     @Override
     public void checkMpaExist(Long mpaId) {
-        String queryMpaSelect = "SELECT * FROM mpa WHERE mpa_id = ?;";
-
-        try {
-            jdbcTemplate.queryForObject(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs), mpaId);
-        } catch (EmptyResultDataAccessException e) {
+        if (referenceData.getMpa(mpaId.intValue()) == null) {
             throw new NoSuitableUnitException("Рейтинг с указанным id не существует!");
         }
     }
@@ -100,12 +90,12 @@ public class MpaDbStorage implements MpaStorage {
      * Метод, необходимый для тестирования
      */
     public void deleteLastMpa() {
-        String queryMpaSelect = "SELECT * FROM mpa;";
-        List<Mpa> allMpa = jdbcTemplate.query(queryMpaSelect, (rs, rowNum) -> mapRowToMpa(rs));
+        List<Mpa> allMpa = referenceData.getMpa();
 
         Integer lastMpaId = allMpa.get(allMpa.size() - 1).getId();
 
         String queryMpaDelete = "DELETE FROM mpa WHERE mpa_id = ?";
         jdbcTemplate.update(queryMpaDelete, lastMpaId);
+        referenceData.reload();
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.storage.reference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Неизменяемый снимок справочников жанров и рейтингов MPA. При изменении справочника в БД снимок целиком
+ * перечитывается и атомарно подменяется; перечитывания выполняются по очереди, чтобы более старый снимок
+ * не был опубликован последним. Genres и Mpa изменяемы, поэтому наружу выдаются их копии, а не экземпляры снимка.
+ */
+@Slf4j
+@Component
+public class ReferenceData {
+    private final JdbcTemplate jdbcTemplate;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(List.of(), List.of());
+
+    public ReferenceData(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        log.info("Загрузка из БД справочников жанров и рейтингов.");
+        List<Genres> genres = jdbcTemplate.query("SELECT genre_id, genre FROM genres ORDER BY genre_id;",
+                (rs, rowNum) -> new Genres(rs.getInt("genre_id"), rs.getString("genre")));
+        List<Mpa> mpa = jdbcTemplate.query("SELECT mpa_id, mpa FROM mpa ORDER BY mpa_id;",
+                (rs, rowNum) -> new Mpa(rs.getInt("mpa_id"), rs.getString("mpa")));
+
+        snapshot = new Snapshot(genres, mpa);
+        for (Runnable listener : reloadListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Регистрирует действие, выполняемое после каждой подмены снимка (например, сброс кэшей,
+     * в которых хранятся экземпляры из предыдущего снимка).
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public Genres getGenre(int id) {
+        Genres[] genresById = snapshot.genresById;
+        return id >= 0 && id < genresById.length ? copyOf(genresById[id]) : null;
+    }
+
+    public Mpa getMpa(int id) {
+        Mpa[] mpaById = snapshot.mpaById;
+        return id >= 0 && id < mpaById.length ? copyOf(mpaById[id]) : null;
+    }
+
+    public List<Genres> getGenres() {
+        return snapshot.genres.stream()
+                .map(ReferenceData::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    public List<Mpa> getMpa() {
+        return snapshot.mpa.stream()
+                .map(ReferenceData::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    private static Genres copyOf(Genres genre) {
+        return genre == null ? null : new Genres(genre.getId(), genre.getName());
+    }
+
+    private static Mpa copyOf(Mpa mpa) {
+        return mpa == null ? null : new Mpa(mpa.getId(), mpa.getName());
+    }
+
+    private static final class Snapshot {
+        private final List<Genres> genres;
+        private final List<Mpa> mpa;
+        private final Genres[] genresById;
+        private final Mpa[] mpaById;
+
+        private Snapshot(List<Genres> genres, List<Mpa> mpa) {
+            this.genres = Collections.unmodifiableList(new ArrayList<>(genres));
+            this.mpa = Collections.unmodifiableList(new ArrayList<>(mpa));
+
+            int maxGenreId = genres.stream().mapToInt(Genres::getId).max().orElse(-1);
+            genresById = new Genres[maxGenreId + 1];
+            for (Genres genre : genres) {
+                if (genre.getId() >= 0) {
+                    genresById[genre.getId()] = genre;
+                }
+            }
+
+            int maxMpaId = mpa.stream().mapToInt(Mpa::getId).max().orElse(-1);
+            mpaById = new Mpa[maxMpaId + 1];
+            for (Mpa rating : mpa) {
+                if (rating.getId() >= 0) {
+                    mpaById[rating.getId()] = rating;
+                }
+            }
+        }
+    }
+}
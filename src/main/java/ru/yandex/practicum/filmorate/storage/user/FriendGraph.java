@@ -0,0 +1,237 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongList;
+import ru.yandex.practicum.filmorate.util.LongLongMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя хранится отсортированный массив id друзей.
+ * Друзья пользователя - это все, кому он отправил заявку, и те, чью заявку к нему подтвердили
+ * (та же логика, что и в таблице friendship). Массивы не изменяются после публикации, поэтому чтение
+ * не берет блокировок, а изменения заменяют массивы целиком.
+ * Отключается свойством filmorate.friend-graph.enabled=false - тогда друзья считаются запросами к БД.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.friend-graph.enabled", havingValue = "true", matchIfMissing = true)
+public class FriendGraph {
+    private static final long[] EMPTY = new long[0];
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, long[]> outgoing = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> incoming = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> confirmedIncoming = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> followers = new ConcurrentHashMap<>();
+
+    public FriendGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        Map<Long, LongList> outgoingLists = new HashMap<>();
+        Map<Long, LongList> incomingLists = new HashMap<>();
+        Map<Long, LongList> confirmedIncomingLists = new HashMap<>();
+        jdbcTemplate.query("SELECT friend_one_id, friend_two_id, friendship_status FROM friendship;", rs -> {
+            long from = rs.getLong("friend_one_id");
+            long to = rs.getLong("friend_two_id");
+            outgoingLists.computeIfAbsent(from, id -> new LongList()).add(to);
+            incomingLists.computeIfAbsent(to, id -> new LongList()).add(from);
+            if (rs.getBoolean("friendship_status")) {
+                confirmedIncomingLists.computeIfAbsent(to, id -> new LongList()).add(from);
+            }
+        });
+
+        outgoing.clear();
+        incoming.clear();
+        confirmedIncoming.clear();
+        friends.clear();
+        followers.clear();
+        outgoingLists.forEach((id, list) -> outgoing.put(id, list.toSortedArray()));
+        incomingLists.forEach((id, list) -> incoming.put(id, list.toSortedArray()));
+        confirmedIncomingLists.forEach((id, list) -> confirmedIncoming.put(id, list.toSortedArray()));
+        for (Long id : outgoing.keySet()) {
+            SortedLongArrays.putOrRemove(friends, id, calculateFriends(id));
+        }
+        for (Long id : confirmedIncoming.keySet()) {
+            SortedLongArrays.putOrRemove(friends, id, calculateFriends(id));
+        }
+        Map<Long, LongList> followerLists = new HashMap<>();
+        friends.forEach((id, friendIds) -> {
+            for (long friendId : friendIds) {
+                followerLists.computeIfAbsent(friendId, key -> new LongList()).add(id);
+            }
+        });
+        followerLists.forEach((id, list) -> followers.put(id, list.toSortedArray()));
+        log.info("Граф дружбы построен для {} пользователей.", friends.size());
+    }
+
+    /**
+     * Отражает в графе строку friendship (from, to) с указанным статусом.
+     */
+    public synchronized void setEdge(long from, long to, boolean confirmed) {
+        outgoing.put(from, SortedLongArrays.insert(outgoing.getOrDefault(from, EMPTY), to));
+        incoming.put(to, SortedLongArrays.insert(incoming.getOrDefault(to, EMPTY), from));
+        long[] confirmedFrom = confirmedIncoming.getOrDefault(to, EMPTY);
+        SortedLongArrays.putOrRemove(confirmedIncoming, to, confirmed
+                ? SortedLongArrays.insert(confirmedFrom, from)
+                : SortedLongArrays.remove(confirmedFrom, from));
+        recalculateFriends(from);
+        recalculateFriends(to);
+    }
+
+    public synchronized void removeEdge(long from, long to) {
+        SortedLongArrays.putOrRemove(outgoing, from,
+                SortedLongArrays.remove(outgoing.getOrDefault(from, EMPTY), to));
+        SortedLongArrays.putOrRemove(incoming, to,
+                SortedLongArrays.remove(incoming.getOrDefault(to, EMPTY), from));
+        SortedLongArrays.putOrRemove(confirmedIncoming, to,
+                SortedLongArrays.remove(confirmedIncoming.getOrDefault(to, EMPTY), from));
+        recalculateFriends(from);
+        recalculateFriends(to);
+    }
+
+    public synchronized void clear() {
+        outgoing.clear();
+        incoming.clear();
+        confirmedIncoming.clear();
+        friends.clear();
+        followers.clear();
+    }
+
+    /**
+     * Возвращает отсортированный массив id друзей пользователя. Массив нельзя изменять.
+     */
+    public long[] getFriends(long id) {
+        return friends.getOrDefault(id, EMPTY);
+    }
+
+    /**
+     * Возвращает отсортированный массив id пользователей, у которых данный пользователь есть среди друзей.
+     */
+    public long[] getFollowers(long id) {
+        return followers.getOrDefault(id, EMPTY);
+    }
+
+    public long[] getCommonFriends(long id, long otherId) {
+        return intersect(getFriends(id), getFriends(otherId));
+    }
+
+    public int[] getCommonFriendCounts(long id, long[] otherIds) {
+        return countCommonFriends(getFriends(id), this::getFriends, otherIds);
+    }
+
+    /**
+     * Считает общих друзей с каждым из otherIds: друзья пользователя один раз кладутся в хэш-множество,
+     * по которому проверяются друзья каждого кандидата. Счетчики идут в порядке otherIds.
+     */
+    static int[] countCommonFriends(long[] friends, LongFunction<long[]> friendsOf, long[] otherIds) {
+        int[] counts = new int[otherIds.length];
+        if (friends.length == 0) {
+            return counts;
+        }
+
+        LongLongMap friendSet = new LongLongMap(friends.length);
+        for (long friendId : friends) {
+            friendSet.put(friendId, 1);
+        }
+        for (int i = 0; i < otherIds.length; i++) {
+            for (long friendId : friendsOf.apply(otherIds[i])) {
+                if (friendSet.containsKey(friendId)) {
+                    counts[i]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Возвращает отсортированный массив id всех пользователей, связанных с данным заявкой в друзья
+     * в любую сторону, независимо от ее статуса.
+     */
+    public long[] getConnections(long id) {
+        return union(outgoing.getOrDefault(id, EMPTY), incoming.getOrDefault(id, EMPTY));
+    }
+
+    /**
+     * Пересечение двух отсортированных массивов слиянием за O(n + m).
+     */
+    static long[] intersect(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Пересчитывает друзей пользователя и отражает разницу со старым списком в обратном индексе followers.
+     */
+    private void recalculateFriends(long id) {
+        long[] oldFriends = friends.getOrDefault(id, EMPTY);
+        long[] newFriends = calculateFriends(id);
+        SortedLongArrays.putOrRemove(friends, id, newFriends);
+
+        int i = 0;
+        int j = 0;
+        while (i < oldFriends.length || j < newFriends.length) {
+            if (j == newFriends.length || (i < oldFriends.length && oldFriends[i] < newFriends[j])) {
+                long friendId = oldFriends[i++];
+                SortedLongArrays.putOrRemove(followers, friendId,
+                        SortedLongArrays.remove(followers.getOrDefault(friendId, EMPTY), id));
+            } else if (i == oldFriends.length || newFriends[j] < oldFriends[i]) {
+                long friendId = newFriends[j++];
+                followers.put(friendId, SortedLongArrays.insert(followers.getOrDefault(friendId, EMPTY), id));
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private long[] calculateFriends(long id) {
+        return union(outgoing.getOrDefault(id, EMPTY), confirmedIncoming.getOrDefault(id, EMPTY));
+    }
+
+    private static long[] union(long[] first, long[] second) {
+        long[] union = new long[first.length + second.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < second.length) {
+            long next;
+            if (j == second.length || (i < first.length && first[i] <= second[j])) {
+                next = first[i++];
+            } else {
+                next = second[j++];
+            }
+            if (size == 0 || union[size - 1] != next) {
+                union[size++] = next;
+            }
+        }
+
+        return size == union.length ? union : Arrays.copyOf(union, size);
+    }
+}
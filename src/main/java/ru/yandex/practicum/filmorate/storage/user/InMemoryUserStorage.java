@@ -6,6 +6,7 @@ import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Component("inMemoryUserStorage")
 @Slf4j
@@ -52,6 +53,31 @@ public class InMemoryUserStorage implements UserStorage {
         return users.get(id);
     }
 
+    @Override
+    public List<User> get(UserProjection projection) {
+        return project(get(), projection);
+    }
+
+    @Override
+    public User get(Long id, UserProjection projection) {
+        return project(List.of(get(id)), projection).get(0);
+    }
+
+    @Override
+    public List<User> get(Long after, int limit, UserProjection projection) {
+        return project(get(after, limit), projection);
+    }
+
+    @Override
+    public List<User> get(Long after, int limit) {
+        log.info("Получение {} пользователей с id больше {}.", limit, after);
+        return users.values().stream()
+                .filter(user -> user.getId() > after)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     public Set<Long> addFriend(Long id, Long friendId) {
         User user = users.get(id);
         User friendOfUser = users.get(friendId);
@@ -68,12 +94,76 @@ public class InMemoryUserStorage implements UserStorage {
         return user.getFriendsIds();
     }
 
+    @Override
+    public long[] getFriendIds(Long id) {
+        return users.get(id).getFriendsIds().stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+    }
+
+    @Override
+    public long[] getFollowerIds(Long id) {
+        return users.values().stream()
+                .filter(user -> user.getFriendsIds().contains(id))
+                .mapToLong(User::getId)
+                .sorted()
+                .toArray();
+    }
+
+    @Override
+    public long[] getCommonFriendIds(Long id, Long otherId) {
+        return FriendGraph.intersect(getFriendIds(id), getFriendIds(otherId));
+    }
+
+    @Override
+    public long[] getConnectionIds(Long id) {
+        return getFriendIds(id);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long id, Long otherId) {
+        return getByIds(Arrays.stream(getCommonFriendIds(id, otherId)).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public int[] getCommonFriendCounts(Long id, long[] otherIds) {
+        return FriendGraph.countCommonFriends(getFriendIds(id),
+                otherId -> users.containsKey(otherId) ? getFriendIds(otherId) : new long[0], otherIds);
+    }
+
+    @Override
+    public List<User> getByIds(Collection<Long> ids) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getByIds(Collection<Long> ids, UserProjection projection) {
+        return project(getByIds(ids), projection);
+    }
+
     @Override
     public Map<Long, User> getValues() {
         Map<Long, User> copyOfUsers = new HashMap<>(users);
         return copyOfUsers;
     }
 
+    /**
+     * Для неполных проекций возвращает копии пользователей без лишних полей, чтобы не менять хранимые объекты.
+     */
+    private List<User> project(List<User> userList, UserProjection projection) {
+        if (projection == UserProjection.FULL) {
+            return userList;
+        }
+        return userList.stream()
+                .map(user -> new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(),
+                        user.getBirthday(), null, null))
+                .collect(Collectors.toList());
+    }
+
     private User getUserWithNonEmptyName(User user) {
         if (user.getName() == null || user.getName().isEmpty()) {
             user.setName(user.getLogin());
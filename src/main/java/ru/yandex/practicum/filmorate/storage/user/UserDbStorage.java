@@ -1,14 +1,21 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.exception.NotUniqueEntityException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.MembershipFilters;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.util.LongLongMap;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
@@ -16,28 +23,42 @@ import java.util.*;
 @Slf4j
 @Component("userDbStorage")
 public class UserDbStorage implements UserStorage {
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+    private static final String FRIEND_IDS_SUBQUERY = "SELECT friend_id FROM friend_links WHERE user_id = ?";
     private final JdbcTemplate jdbcTemplate;
+    private final FriendGraph friendGraph;
+    private final MembershipFilters membershipFilters;
 
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    /**
+     * friendGraph отсутствует, если граф дружбы в памяти отключен: тогда друзья читаются из БД.
+     */
+    public UserDbStorage(JdbcTemplate jdbcTemplate, Optional<FriendGraph> friendGraph,
+                         MembershipFilters membershipFilters) {
         this.jdbcTemplate = jdbcTemplate;
+        this.friendGraph = friendGraph.orElse(null);
+        this.membershipFilters = membershipFilters;
     }
 
     @Override
     public User create(User user) {
         log.info("Добавление нового пользователя {} в БД.", user);
+        if (isEmailTaken(user.getEmail(), null)) {
+            throw new NotUniqueEntityException("Пользователь с email = " + user.getEmail() + " уже есть в БД");
+        }
         try {
             String queryUsersInsert = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?);";
 
-            jdbcTemplate.update(queryUsersInsert,
-                    user.getEmail(),
-                    user.getLogin(),
-                    getUserWithNonEmptyName(user).getName(),
-                    user.getBirthday());
-
-            String queryUsersSelect = "SELECT user_id FROM users WHERE email = ?;";
-            Long userId = jdbcTemplate.queryForObject(queryUsersSelect,
-                    (rs, rowNum) -> mapRowToId(rs, "user_id"), user.getEmail());
-            user.setId(userId);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(queryUsersInsert, new String[]{"user_id"});
+                statement.setString(1, user.getEmail());
+                statement.setString(2, user.getLogin());
+                statement.setString(3, getUserWithNonEmptyName(user).getName());
+                statement.setObject(4, user.getBirthday());
+                return statement;
+            }, keyHolder);
+            user.setId(keyHolder.getKey().longValue());
+            membershipFilters.addUser(user.getId(), user.getEmail());
 
             return user;
         } catch (RuntimeException e) {
@@ -49,8 +70,13 @@ public class UserDbStorage implements UserStorage {
     public User update(User user) {
         log.info("Изменение данных в БД у пользователя с id = {}.", user.getId());
         String queryUsersUpdate = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE user_id = ?;";
+        if (isEmailTaken(user.getEmail(), user.getId())) {
+            throw new ValidationException("Невозможно поменять email на " + user.getEmail() +
+                    " - пользователь с таким email уже существует.");
+        }
 
         try {
+            membershipFilters.addEmail(user.getEmail());
             jdbcTemplate.update(queryUsersUpdate, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(),
                     user.getId());
             return user;
@@ -62,118 +88,374 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> get() {
+        return get(UserProjection.FULL);
+    }
+
+    @Override
+    public List<User> get(UserProjection projection) {
         log.info("Чтение всех пользователей из БД.");
         String sql = "SELECT * FROM users;";
 
-        List<User> usersWithoutFriendsAndLikes = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs));
-        List<User> users = new ArrayList<>();
-        for (User user : usersWithoutFriendsAndLikes) {
-            users.add(getUserWithFriendsAndLikes(user));
+        Map<Long, User> users = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            User user = mapRowToUser(rs, projection);
+            users.put(user.getId(), user);
+        });
+        if (projection == UserProjection.FULL && !users.isEmpty()) {
+            loadFriendsAndLikes(users, null);
         }
-
-        return users;
+        return new ArrayList<>(users.values());
     }
 
     @Override
     public User get(Long id) {
+        return get(id, UserProjection.FULL);
+    }
+
+    @Override
+    public User get(Long id, UserProjection projection) {
+        if (id == null || !membershipFilters.mightContainUser(id)) {
+            throw new NoSuitableUnitException("В БД отсутствует запрошенный пользователь");
+        }
         log.info("Чтение пользователя с id = " + id + " из БД.");
         String sql = "SELECT * FROM users WHERE user_id = ?;";
-        try {
-            User userWithoutFriendsAndLikes = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapRowToUser(rs), id);
-            return getUserWithFriendsAndLikes(userWithoutFriendsAndLikes);
-        } catch (Exception e) {
+
+        Map<Long, User> users = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            User user = mapRowToUser(rs, projection);
+            users.put(user.getId(), user);
+        }, id);
+        if (users.isEmpty()) {
             throw new NoSuitableUnitException("В БД отсутствует запрошенный пользователь");
         }
+        if (projection == UserProjection.FULL) {
+            loadFriendsAndLikes(users, "= ?", id);
+        }
+        return users.get(id);
+    }
+
+    @Override
+    public List<User> get(Long after, int limit) {
+        return get(after, limit, UserProjection.FULL);
+    }
+
+    @Override
+    public List<User> get(Long after, int limit, UserProjection projection) {
+        log.info("Чтение из БД {} пользователей с id больше {}.", limit, after);
+        String sql = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?;";
+
+        Map<Long, User> users = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            User user = mapRowToUser(rs, projection);
+            users.put(user.getId(), user);
+        }, after, limit);
+
+        if (projection == UserProjection.FULL && !users.isEmpty()) {
+            List<Long> ids = new ArrayList<>(users.keySet());
+            loadFriendsAndLikes(users, "BETWEEN ? AND ?", ids.get(0), ids.get(ids.size() - 1));
+        }
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public List<User> getByIds(Collection<Long> ids) {
+        return getByIds(ids, UserProjection.FULL);
     }
 
+    /**
+     * Читает пользователей частями по IN_LIST_CHUNK_SIZE id: на каждую часть - запрос пользователей
+     * и, для FULL, запрос их лайков, друзья берутся из графа дружбы.
+     */
     @Override
+    public List<User> getByIds(Collection<Long> ids, UserProjection projection) {
+        log.info("Чтение из БД {} пользователей по списку id.", ids.size());
+        List<Long> idList = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            if (id != null && membershipFilters.mightContainUser(id)) {
+                idList.add(id);
+            }
+        }
+        Map<Long, User> users = new HashMap<>();
+        for (int from = 0; from < idList.size(); from += IN_LIST_CHUNK_SIZE) {
+            Object[] chunk = idList.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, idList.size())).toArray();
+            String inList = "IN (" + String.join(", ", Collections.nCopies(chunk.length, "?")) + ")";
+
+            Map<Long, User> chunkUsers = new HashMap<>();
+            jdbcTemplate.query("SELECT * FROM users WHERE user_id " + inList + ";",
+                    rs -> {
+                        User user = mapRowToUser(rs, projection);
+                        chunkUsers.put(user.getId(), user);
+                    }, chunk);
+            if (projection == UserProjection.FULL && !chunkUsers.isEmpty()) {
+                loadFriendsAndLikes(chunkUsers, inList, chunk);
+            }
+            users.putAll(chunkUsers);
+        }
+
+        List<User> result = new ArrayList<>();
+        for (Long id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Кроме строки friendship обновляет в той же транзакции зеркальную таблицу friend_links, где для каждого
+     * пользователя хранятся строки (user_id, friend_id) для всех его друзей.
+     */
+    @Override
+    @Transactional
     public Set<Long> addFriend(Long id, Long friendId) {
-        String queryFriendShipSelect = "SELECT friend_one_id FROM friendship WHERE friend_two_id = ?;";
-
-        List<Long> friendsOfSecond = jdbcTemplate.query(queryFriendShipSelect,
-                (rs, rowNum) -> mapRowToId(rs, "friend_one_id"), friendId);
-        if (friendsOfSecond.contains(id)) {
-            String queryFriendShipUpdate = "UPDATE friendship SET friendship_status = true WHERE friend_two_id = ? " +
-                    "AND friend_one_id = ?;";
-            jdbcTemplate.update(queryFriendShipUpdate, friendId, id);
-        } else {
-            String queryFriendShipInsert = "INSERT INTO friendship (friend_one_id, friend_two_id, friendship_status) " +
-                    "VALUES (?, ?, ?);";
+        String queryFriendShipMerge = "MERGE INTO friendship AS f " +
+                "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER))) AS v (friend_one_id, friend_two_id) " +
+                "ON f.friend_one_id = v.friend_one_id AND f.friend_two_id = v.friend_two_id " +
+                "WHEN MATCHED THEN UPDATE SET friendship_status = true " +
+                "WHEN NOT MATCHED THEN INSERT (friend_one_id, friend_two_id, friendship_status) " +
+                "VALUES (v.friend_one_id, v.friend_two_id, false);";
 
-            jdbcTemplate.update(queryFriendShipInsert, id, friendId, false);
+        try {
+            jdbcTemplate.update(queryFriendShipMerge, id, friendId);
+        } catch (DuplicateKeyException e) {
+            String queryFriendShipUpdate = "UPDATE friendship SET friendship_status = true WHERE friend_one_id = ? " +
+                    "AND friend_two_id = ?;";
+            jdbcTemplate.update(queryFriendShipUpdate, id, friendId);
+        }
+
+        String queryFriendShipSelect = "SELECT friendship_status FROM friendship " +
+                "WHERE friend_one_id = ? AND friend_two_id = ?;";
+        boolean confirmed = jdbcTemplate.queryForObject(queryFriendShipSelect, Boolean.class, id, friendId);
+        insertFriendLink(id, friendId);
+        if (confirmed) {
+            insertFriendLink(friendId, id);
+        }
+        if (friendGraph != null) {
+            TransactionCallbacks.afterCommit(() -> friendGraph.setEdge(id, friendId, confirmed));
         }
 
-        Set<Long> allFriendIds = getAllFriendIds(id);
+        Set<Long> allFriendIds = getStoredFriendIds(id);
         return allFriendIds;
     }
 
     @Override
+    @Transactional
     public Set<Long> deleteFriend(Long id, Long friendId) {
-        String queryFriendShipSelect = "SELECT friend_two_id FROM friendship WHERE friend_one_id = ?;";
+        String queryFriendShipDelete = "DELETE FROM friendship " +
+                "WHERE (friend_one_id = ? AND friend_two_id = ?) OR (friend_one_id = ? AND friend_two_id = ?);";
+        jdbcTemplate.update(queryFriendShipDelete, id, friendId, friendId, id);
+        String queryFriendLinksDelete = "DELETE FROM friend_links " +
+                "WHERE (user_id = ? AND friend_id = ?) OR (user_id = ? AND friend_id = ?);";
+        jdbcTemplate.update(queryFriendLinksDelete, id, friendId, friendId, id);
+        if (friendGraph != null) {
+            TransactionCallbacks.afterCommit(() -> {
+                friendGraph.removeEdge(id, friendId);
+                friendGraph.removeEdge(friendId, id);
+            });
+        }
+
+        Set<Long> allFriendIds = getStoredFriendIds(id);
+        return allFriendIds;
+    }
 
-        List<Long> firstListFriendsOfFirst = jdbcTemplate.query(queryFriendShipSelect,
-                (rs, rowNum) -> mapRowToId(rs, "friend_two_id"), id);
+    private void insertFriendLink(Long id, Long friendId) {
+        String queryFriendLinksMerge = "MERGE INTO friend_links (user_id, friend_id) KEY (user_id, friend_id) " +
+                "VALUES (?, ?);";
+        try {
+            jdbcTemplate.update(queryFriendLinksMerge, id, friendId);
+        } catch (DuplicateKeyException e) {
+            log.debug("Связь пользователя с id = {} с другом с id = {} уже добавлена.", id, friendId);
+        }
+    }
 
-        queryFriendShipSelect = "SELECT friend_one_id FROM friendship WHERE friend_two_id = ?;";
+    @Override
+    public long[] getFriendIds(Long id) {
+        if (friendGraph != null) {
+            return friendGraph.getFriends(id);
+        }
 
-        List<Long> secondListFriendsOfFirst = jdbcTemplate.query(queryFriendShipSelect,
-                (rs, rowNum) -> mapRowToId(rs, "friend_one_id"), id);
+        String queryFriendShipSelect = FRIEND_IDS_SUBQUERY + " ORDER BY 1;";
+        return jdbcTemplate.queryForList(queryFriendShipSelect, Long.class, id).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
 
-        if (!firstListFriendsOfFirst.isEmpty()) {
-            String queryFriendShipDelete = "DELETE FROM friendship WHERE friend_one_id = ? AND friend_two_id = ?;";
-            jdbcTemplate.update(queryFriendShipDelete, id, friendId);
+    @Override
+    public long[] getFollowerIds(Long id) {
+        if (friendGraph != null) {
+            return friendGraph.getFollowers(id);
         }
 
-        if (!secondListFriendsOfFirst.isEmpty()) {
-            String queryFriendShipDelete = "DELETE FROM friendship WHERE friend_two_id = ? AND friend_one_id = ?;";
-            jdbcTemplate.update(queryFriendShipDelete, id, friendId);
+        String queryFriendLinksSelect = "SELECT user_id FROM friend_links WHERE friend_id = ? ORDER BY 1;";
+        return jdbcTemplate.queryForList(queryFriendLinksSelect, Long.class, id).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    @Override
+    public long[] getCommonFriendIds(Long id, Long otherId) {
+        if (friendGraph != null) {
+            return friendGraph.getCommonFriends(id, otherId);
         }
 
-        Set<Long> allFriendIds = getAllFriendIds(id);
-        return allFriendIds;
+        String queryFriendShipSelect = "(" + FRIEND_IDS_SUBQUERY + ") INTERSECT (" + FRIEND_IDS_SUBQUERY + ") " +
+                "ORDER BY 1;";
+        return jdbcTemplate.queryForList(queryFriendShipSelect, Long.class, id, otherId).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    @Override
+    public long[] getConnectionIds(Long id) {
+        if (friendGraph != null) {
+            return friendGraph.getConnections(id);
+        }
+
+        String queryFriendShipSelect = "SELECT friend_two_id FROM friendship WHERE friend_one_id = ? " +
+                "UNION " +
+                "SELECT friend_one_id FROM friendship WHERE friend_two_id = ? " +
+                "ORDER BY 1;";
+        return jdbcTemplate.queryForList(queryFriendShipSelect, Long.class, id, id).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    /**
+     * Без графа в памяти общие друзья находятся одним запросом: пересечение множеств друзей обоих
+     * пользователей считается в БД по первичному ключу friend_links (user_id, friend_id).
+     */
+    @Override
+    public List<User> getCommonFriends(Long id, Long otherId) {
+        if (friendGraph != null) {
+            return getByIds(toList(friendGraph.getCommonFriends(id, otherId)));
+        }
+
+        log.info("Чтение из БД общих друзей пользователей с id = {} и id = {}.", id, otherId);
+        String queryUsersSelect = "SELECT * FROM users " +
+                "WHERE user_id IN ((" + FRIEND_IDS_SUBQUERY + ") INTERSECT (" + FRIEND_IDS_SUBQUERY + ")) " +
+                "ORDER BY user_id;";
+        Map<Long, User> users = new LinkedHashMap<>();
+        jdbcTemplate.query(queryUsersSelect, rs -> {
+            User user = mapRowToUser(rs, UserProjection.FULL);
+            users.put(user.getId(), user);
+        }, id, otherId);
+
+        if (!users.isEmpty()) {
+            List<Long> ids = new ArrayList<>(users.keySet());
+            loadFriendsAndLikes(users, "IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")",
+                    ids.toArray());
+        }
+        return new ArrayList<>(users.values());
+    }
+
+    /**
+     * Без графа в памяти счетчики считаются в БД соединением friend_links с самой собой частями
+     * по IN_LIST_CHUNK_SIZE кандидатов: для кандидатов используется индекс (friend_id, user_id).
+     */
+    @Override
+    public int[] getCommonFriendCounts(Long id, long[] otherIds) {
+        if (friendGraph != null) {
+            return friendGraph.getCommonFriendCounts(id, otherIds);
+        }
+
+        log.info("Подсчет в БД общих друзей пользователя с id = {} с {} пользователями.", id, otherIds.length);
+        LongLongMap countsById = new LongLongMap(otherIds.length);
+        for (int from = 0; from < otherIds.length; from += IN_LIST_CHUNK_SIZE) {
+            int to = Math.min(from + IN_LIST_CHUNK_SIZE, otherIds.length);
+            Object[] args = new Object[to - from + 1];
+            args[0] = id;
+            for (int i = from; i < to; i++) {
+                args[i - from + 1] = otherIds[i];
+            }
+
+            String queryFriendLinksSelect = "SELECT b.user_id, COUNT(*) AS common_count " +
+                    "FROM friend_links AS a " +
+                    "JOIN friend_links AS b ON b.friend_id = a.friend_id " +
+                    "WHERE a.user_id = ? " +
+                    "AND b.user_id IN (" + String.join(", ", Collections.nCopies(to - from, "?")) + ") " +
+                    "GROUP BY b.user_id;";
+            jdbcTemplate.query(queryFriendLinksSelect,
+                    rs -> {
+                        countsById.put(rs.getLong("user_id"), rs.getLong("common_count"));
+                    }, args);
+        }
+
+        int[] counts = new int[otherIds.length];
+        for (int i = 0; i < otherIds.length; i++) {
+            counts[i] = (int) countsById.get(otherIds[i], 0);
+        }
+        return counts;
     }
 
     @Override
     public Map<Long, User> getValues() {
         log.info("Выгрузка всех пользователей из БД.");
-        String queryUsersSelect = "SELECT * FROM users;";
-
         Map<Long, User> userMap = new HashMap<>();
-        List<User> userList = jdbcTemplate.query(queryUsersSelect, (rs, rowNum) -> mapRowToUser(rs));
-        for (User user : userList) {
+        for (User user : get(UserProjection.FULL)) {
             userMap.put(user.getId(), user);
         }
         return userMap;
     }
 
-    private User mapRowToUser(ResultSet rs) throws SQLException {
+    /**
+     * Проверяет, занят ли email другим пользователем. Запрос к БД выполняется, только если фильтр email
+     * не дал точного ответа "нет".
+     */
+    private boolean isEmailTaken(String email, Long exceptUserId) {
+        if (email == null || !membershipFilters.mightContainEmail(email)) {
+            return false;
+        }
+
+        String queryUsersSelect = "SELECT COUNT(*) FROM users WHERE email = ? AND user_id <> ?;";
+        Integer count = jdbcTemplate.queryForObject(queryUsersSelect, Integer.class, email,
+                exceptUserId == null ? -1L : exceptUserId);
+        return count != null && count > 0;
+    }
+
+    private User mapRowToUser(ResultSet rs, UserProjection projection) throws SQLException {
+        boolean full = projection == UserProjection.FULL;
         User user = new User(
                 rs.getLong("user_id"),
                 rs.getString("email"),
                 rs.getString("login"),
                 rs.getString("name"),
                 rs.getDate("birthday").toLocalDate(),
-                new HashSet<>(),
-                new HashSet<>());
+                full ? new HashSet<>() : null,
+                full ? new HashSet<>() : null);
 
-        return getUserWithFriendsAndLikes(user);
+        return user;
     }
 
-    private User getUserWithFriendsAndLikes(User user) {
-        Long userId = user.getId();
-        Set<Long> allFriendIds = getAllFriendIds(userId);
-
-        String queryUserLikesSelect = "SELECT film_id FROM user_likes WHERE user_id = ?;";
-        List<Long> filmLikes = jdbcTemplate.query(queryUserLikesSelect,
-                (rs, rowNum) -> mapRowToId(rs, "film_id"), userId);
-
-        Set<Long> allLikedFilms = new HashSet<>();
-        allLikedFilms.addAll(filmLikes);
-
-        user.setFriendsIds(allFriendIds);
-        user.setLikedFilmsIds(allLikedFilms);
+    /**
+     * Догружает друзей и лайки для уже прочитанных пользователей фиксированным числом запросов
+     * (друзей - из графа дружбы, если он включен). Условие idCondition (например, "BETWEEN ? AND ?")
+     * подставляется после колонки с id пользователя; null - догрузить для всех пользователей.
+     */
+    private void loadFriendsAndLikes(Map<Long, User> users, String idCondition, Object... args) {
+        if (friendGraph != null) {
+            for (User user : users.values()) {
+                user.setFriendsIds(getAllFriendIds(user.getId()));
+            }
+        } else {
+            String queryFriendLinksSelect = "SELECT user_id, friend_id FROM friend_links" +
+                    (idCondition == null ? ";" : " WHERE user_id " + idCondition + ";");
+            jdbcTemplate.query(queryFriendLinksSelect, rs -> {
+                User user = users.get(rs.getLong("user_id"));
+                if (user != null) {
+                    user.addFriend(rs.getLong("friend_id"));
+                }
+            }, args);
+        }
 
-        return user;
+        String queryUserLikesSelect = "SELECT user_id, film_id FROM user_likes" +
+                (idCondition == null ? ";" : " WHERE user_id " + idCondition + ";");
+        jdbcTemplate.query(queryUserLikesSelect, rs -> {
+            User user = users.get(rs.getLong("user_id"));
+            if (user != null) {
+                user.getLikedFilmsIds().add(rs.getLong("film_id"));
+            }
+        }, args);
     }
 
     private Long mapRowToId(ResultSet rs, String column) throws SQLException {
@@ -187,49 +469,76 @@ public class UserDbStorage implements UserStorage {
         return user;
     }
 
-    private Set<Long> getAllFriendIds(Long userId) {
-        String firstQueryFriendShipSelect = "SELECT friend_two_id FROM friendship WHERE friend_one_id = ?;";
-        String secondQueryFriendShipSelect = "SELECT friend_one_id FROM friendship WHERE friend_two_id = ? " +
-                "AND friendship_status = true;";
-
-        List<Long> firstListOfFriends = jdbcTemplate.query(firstQueryFriendShipSelect,
-                (rs, rowNum) -> mapRowToId(rs, "friend_two_id"), userId);
-        List<Long> secondListOfFriends = jdbcTemplate.query(secondQueryFriendShipSelect,
-                (rs, rowNum) -> mapRowToId(rs, "friend_one_id"), userId);
+    /**
+     * Читает друзей из friend_links: внутри транзакции граф дружбы еще не видит ее изменений,
+     * они попадают в него только после коммита.
+     */
+    private Set<Long> getStoredFriendIds(Long userId) {
+        return new HashSet<>(jdbcTemplate.queryForList(FRIEND_IDS_SUBQUERY + ";", Long.class, userId));
+    }
 
+    private Set<Long> getAllFriendIds(Long userId) {
         Set<Long> allFriends = new HashSet<>();
-        allFriends.addAll(firstListOfFriends);
-        allFriends.addAll(secondListOfFriends);
-
+        for (long friendId : getFriendIds(userId)) {
+            allFriends.add(friendId);
+        }
         return allFriends;
     }
 
+    private List<Long> toList(long[] ids) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+        return idList;
+    }
+
+    /**
+     * Проверяет все id одним запросом: найдено должно быть столько пользователей, сколько различных id передано.
+     */
     @Override
     public boolean doUsersExist(Long... receivedUsersIds) {
-        for (Long id : receivedUsersIds) {
-            String queryUsersSelect = "SELECT * FROM users WHERE user_id = ?;";
-
-            try {
-                jdbcTemplate.queryForObject(queryUsersSelect, (rs, rowNum) -> mapRowToUser(rs), id);
-            } catch (EmptyResultDataAccessException e) {
+        Set<Long> ids = new HashSet<>(Arrays.asList(receivedUsersIds));
+        if (ids.contains(null)) {
+            return false;
+        }
+        for (Long id : ids) {
+            if (!membershipFilters.mightContainUser(id)) {
                 return false;
             }
-
         }
-        return true;
+        if (ids.isEmpty()) {
+            return true;
+        }
+
+        String queryUsersSelect = "SELECT COUNT(*) FROM users " +
+                "WHERE user_id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ");";
+        Integer count = jdbcTemplate.queryForObject(queryUsersSelect, Integer.class, ids.toArray());
+        return count != null && count == ids.size();
     }
 
     /**
      * Метод, необходимый для проведения тестов
      */
     public void deleteAllUsers() {
+        String queryFriendLinksDelete = "DELETE FROM friend_links;";
+        jdbcTemplate.update(queryFriendLinksDelete);
+
         String queryFriendshipDelete = "DELETE FROM friendship;";
         jdbcTemplate.update(queryFriendshipDelete);
 
         String queryUserLikesDelete = "DELETE FROM user_likes;";
         jdbcTemplate.update(queryUserLikesDelete);
 
+        String queryFilmsUpdate = "UPDATE films SET like_count = 0, like_version = like_version + 1;";
+        jdbcTemplate.update(queryFilmsUpdate);
+
         String queryUsersDelete = "DELETE FROM users;";
         jdbcTemplate.update(queryUsersDelete);
+
+        if (friendGraph != null) {
+            friendGraph.clear();
+        }
+        membershipFilters.rebuildUsers();
     }
 }
\ No newline at end of file
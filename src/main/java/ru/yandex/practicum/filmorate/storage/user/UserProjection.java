@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+/**
+ * Набор полей пользователя, которые читаются из хранилища.
+ */
+public enum UserProjection {
+    /**
+     * Поля из таблицы users без друзей и лайков: friendsIds и likedFilmsIds остаются null.
+     */
+    CORE,
+    /**
+     * Пользователь вместе с id друзей и понравившихся фильмов.
+     */
+    FULL
+}
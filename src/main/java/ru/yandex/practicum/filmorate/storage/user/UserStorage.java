@@ -3,6 +3,8 @@ package ru.yandex.practicum.filmorate.storage.user;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.Storage;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface UserStorage extends Storage<User> {
@@ -11,4 +13,42 @@ public interface UserStorage extends Storage<User> {
     Set<Long> deleteFriend(Long id, Long friendId);
 
     boolean doUsersExist(Long... receivedUsersIds);
+
+    /**
+     * Возвращает отсортированные по возрастанию id друзей пользователя.
+     */
+    long[] getFriendIds(Long id);
+
+    long[] getCommonFriendIds(Long id, Long otherId);
+
+    /**
+     * Возвращает отсортированные id пользователей, у которых данный пользователь есть среди друзей.
+     */
+    long[] getFollowerIds(Long id);
+
+    List<User> getCommonFriends(Long id, Long otherId);
+
+    /**
+     * Возвращает число общих друзей пользователя с каждым из otherIds (в том же порядке).
+     */
+    int[] getCommonFriendCounts(Long id, long[] otherIds);
+
+    /**
+     * Возвращает отсортированные id всех пользователей, связанных с данным заявкой в друзья в любую сторону,
+     * независимо от ее статуса (неориентированный граф знакомств).
+     */
+    long[] getConnectionIds(Long id);
+
+    /**
+     * Возвращает пользователей с указанными id в порядке переданных id; отсутствующие id пропускаются.
+     */
+    List<User> getByIds(Collection<Long> ids);
+
+    List<User> getByIds(Collection<Long> ids, UserProjection projection);
+
+    List<User> get(UserProjection projection);
+
+    User get(Long id, UserProjection projection);
+
+    List<User> get(Long after, int limit, UserProjection projection);
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума для значений long: mightContain = false означает, что значение точно не добавлялось,
+ * true - что оно, возможно, добавлялось. Потокобезопасен без блокировок.
+ */
+public class BloomFilter {
+    private static final double LN2 = Math.log(2);
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * @param capacity          ожидаемое число значений
+     * @param falsePositiveRate доля ложноположительных ответов при заполнении до capacity
+     */
+    public BloomFilter(long capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        long bits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int wordCount = (int) Math.max(1, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / this.capacity * LN2));
+    }
+
+    /**
+     * Добавляет значение; возвращает false, если все его биты уже были установлены (значение, вероятно, уже есть).
+     */
+    public boolean add(long value) {
+        long hash = Hashing.mix(value);
+        long step = Hashing.mix(hash) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((words.get(word) & mask) == 0
+                    && (words.getAndAccumulate(word, mask, (current, added) -> current | added) & mask) == 0) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+        return changed;
+    }
+
+    public boolean mightContain(long value) {
+        long hash = Hashing.mix(value);
+        long step = Hashing.mix(hash) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Примерное число различных добавленных значений (повторные добавления не считаются).
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 64-битный хэш строки (FNV-1a), чтобы хранить строки в фильтре как long.
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.util;
+
+public final class Hashing {
+    private Hashing() {
+    }
+
+    /**
+     * Перемешивание битов из SplitMix64: близкие значения (например, последовательные id) дают
+     * непохожие хэши, поэтому их можно брать по модулю или по отдельным битам.
+     */
+    public static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * Счетчик long -> int поверх {@link LongLongMap}.
+ * Ключ Long.MIN_VALUE зарезервирован под пустую ячейку.
+ */
+public class LongIntCounter {
+    private final LongLongMap counts;
+
+    public LongIntCounter() {
+        this(16);
+    }
+
+    public LongIntCounter(int expectedSize) {
+        counts = new LongLongMap(expectedSize);
+    }
+
+    public int increment(long key) {
+        return add(key, 1);
+    }
+
+    public int add(long key, int delta) {
+        return (int) counts.add(key, delta);
+    }
+
+    public int get(long key) {
+        return (int) counts.get(key, 0);
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    public void forEach(Consumer consumer) {
+        counts.forEach((key, count) -> consumer.accept(key, (int) count));
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int count);
+    }
+}
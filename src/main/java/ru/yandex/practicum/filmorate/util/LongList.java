@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Растущий список long без упаковки в Long.
+ */
+public class LongList {
+    private long[] values = new long[4];
+    private int size;
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public long[] toSortedArray() {
+        long[] result = toArray();
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Отображение long -> long на открытой адресации без упаковки в Long.
+ * Ключ Long.MIN_VALUE зарезервирован под пустую ячейку.
+ */
+public class LongLongMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public void put(long key, long value) {
+        int index = indexOf(key);
+        values[index] = value;
+        if (keys[index] == EMPTY) {
+            insert(index, key);
+        }
+    }
+
+    /**
+     * Прибавляет delta к значению ключа (отсутствующий ключ считается равным нулю) и возвращает новое значение.
+     */
+    public long add(long key, long delta) {
+        int index = indexOf(key);
+        if (keys[index] == EMPTY) {
+            values[index] = delta;
+            insert(index, key);
+            return delta;
+        }
+        values[index] += delta;
+        return values[index];
+    }
+
+    public long get(long key, long defaultValue) {
+        int index = indexOf(key);
+        return keys[index] == EMPTY ? defaultValue : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return keys[indexOf(key)] != EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void insert(int index, long key) {
+        keys[index] = key;
+        size++;
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long value);
+    }
+}
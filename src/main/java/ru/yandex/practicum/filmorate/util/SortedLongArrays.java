@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Операции над отсортированными массивами long без повторов, которые копируются при записи:
+ * исходный массив не изменяется, поэтому его можно отдавать читателям без блокировок.
+ */
+public final class SortedLongArrays {
+    private SortedLongArrays() {
+    }
+
+    /**
+     * Возвращает массив с добавленным значением или тот же массив, если значение в нем уже есть.
+     */
+    public static long[] insert(long[] array, long value) {
+        int position = Arrays.binarySearch(array, value);
+        if (position >= 0) {
+            return array;
+        }
+        position = -position - 1;
+        long[] result = new long[array.length + 1];
+        System.arraycopy(array, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(array, position, result, position + 1, array.length - position);
+        return result;
+    }
+
+    /**
+     * Возвращает массив без значения или тот же массив, если значения в нем нет.
+     */
+    public static long[] remove(long[] array, long value) {
+        int position = Arrays.binarySearch(array, value);
+        if (position < 0) {
+            return array;
+        }
+        long[] result = new long[array.length - 1];
+        System.arraycopy(array, 0, result, 0, position);
+        System.arraycopy(array, position + 1, result, position, array.length - position - 1);
+        return result;
+    }
+
+    /**
+     * Кладет массив в отображение по ключу id, а пустой массив - удаляет из него.
+     */
+    public static void putOrRemove(Map<Long, long[]> arrays, long id, long[] array) {
+        if (array.length == 0) {
+            arrays.remove(id);
+        } else {
+            arrays.put(id, array);
+        }
+    }
+}
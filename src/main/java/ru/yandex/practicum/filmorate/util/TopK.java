@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Отбор k лучших id по весу без полной сортировки: двоичная куча размера k с худшим элементом в корне,
+ * O(n log k) на n кандидатов. При равном весе выше стоит меньший id.
+ */
+public class TopK {
+    private final long[] ids;
+    private final long[] weights;
+    private int size;
+
+    public TopK(int k) {
+        ids = new long[k];
+        weights = new long[k];
+    }
+
+    public void offer(long id, long weight) {
+        if (ids.length == 0) {
+            return;
+        }
+        if (size < ids.length) {
+            ids[size] = id;
+            weights[size] = weight;
+            siftUp(size++);
+        } else if (isBetter(id, weight, 0)) {
+            ids[0] = id;
+            weights[0] = weight;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Возвращает отобранные id от лучшего к худшему.
+     */
+    public long[] toSortedArray() {
+        long[] heapIds = Arrays.copyOf(ids, size);
+        long[] heapWeights = Arrays.copyOf(weights, size);
+        int heapSize = size;
+        long[] result = new long[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = ids[0];
+            size--;
+            ids[0] = ids[size];
+            weights[0] = weights[size];
+            siftDown(0);
+        }
+        System.arraycopy(heapIds, 0, ids, 0, heapSize);
+        System.arraycopy(heapWeights, 0, weights, 0, heapSize);
+        size = heapSize;
+        return result;
+    }
+
+    private boolean isBetter(long id, long weight, int index) {
+        return weight > weights[index] || (weight == weights[index] && id < ids[index]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isBetter(ids[parent], weights[parent], index)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            int left = index * 2 + 1;
+            int right = left + 1;
+            if (left < size && isBetter(ids[worst], weights[worst], left)) {
+                worst = left;
+            }
+            if (right < size && isBetter(ids[worst], weights[worst], right)) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        long id = ids[first];
+        ids[first] = ids[second];
+        ids[second] = id;
+        long weight = weights[first];
+        weights[first] = weights[second];
+        weights[second] = weight;
+    }
+}
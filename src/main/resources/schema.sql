@@ -12,6 +12,8 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILMS (
 	MPA_ID INTEGER NOT NULL,
 	RELEASE_DATE DATE NOT NULL,
 	DURATION INTEGER NOT NULL,
+	LIKE_COUNT INTEGER DEFAULT 0 NOT NULL,
+	LIKE_VERSION BIGINT DEFAULT 0 NOT NULL,
 	CONSTRAINT FILMS_PK PRIMARY KEY (FILM_ID),
 	CONSTRAINT FILMS_FK_1 FOREIGN KEY (MPA_ID) REFERENCES PUBLIC.MPA(MPA_ID) ON DELETE RESTRICT ON UPDATE RESTRICT
 );
@@ -50,6 +52,7 @@ CREATE TABLE IF NOT EXISTS PUBLIC.USER_LIKES (
 	FILM_ID INTEGER NOT NULL,
 	USER_ID INTEGER NOT NULL,
 	CONSTRAINT USER_LIKES_PK PRIMARY KEY (USER_LIKES_ID),
+	CONSTRAINT USER_LIKES_FILM_USER_UNIQUE UNIQUE (FILM_ID, USER_ID),
 	CONSTRAINT USER_LIKES_FK FOREIGN KEY (FILM_ID) REFERENCES PUBLIC.FILMS(FILM_ID) ON DELETE RESTRICT ON UPDATE
 	RESTRICT,
 	CONSTRAINT USER_LIKES_FK_1 FOREIGN KEY (USER_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE RESTRICT ON UPDATE
@@ -63,9 +66,55 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FRIENDSHIP (
 	FRIEND_TWO_ID INTEGER NOT NULL,
 	FRIENDSHIP_STATUS BOOLEAN NOT NULL,
 	CONSTRAINT FRIENDSHIP_PK PRIMARY KEY (FRIENDSHIP_ID),
+	CONSTRAINT FRIENDSHIP_FRIENDS_UNIQUE UNIQUE (FRIEND_ONE_ID, FRIEND_TWO_ID),
 	CONSTRAINT FRIENDSHIP_FK FOREIGN KEY (FRIEND_ONE_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE RESTRICT ON UPDATE
 	RESTRICT,
 	CONSTRAINT FRIENDSHIP_FK_1 FOREIGN KEY (FRIEND_TWO_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE RESTRICT ON UPDATE
 	RESTRICT
 );
-ALTER TABLE PUBLIC.FRIENDSHIP ALTER COLUMN FRIENDSHIP_ID RESTART WITH 1;
\ No newline at end of file
+ALTER TABLE PUBLIC.FRIENDSHIP ALTER COLUMN FRIENDSHIP_ID RESTART WITH 1;
+
+CREATE TABLE IF NOT EXISTS PUBLIC.FRIEND_LINKS (
+	USER_ID INTEGER NOT NULL,
+	FRIEND_ID INTEGER NOT NULL,
+	CONSTRAINT FRIEND_LINKS_PK PRIMARY KEY (USER_ID, FRIEND_ID),
+	CONSTRAINT FRIEND_LINKS_FK FOREIGN KEY (USER_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE RESTRICT ON UPDATE
+	RESTRICT,
+	CONSTRAINT FRIEND_LINKS_FK_1 FOREIGN KEY (FRIEND_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE RESTRICT ON UPDATE
+	RESTRICT
+);
+
+DELETE FROM PUBLIC.USER_LIKES
+WHERE USER_LIKES_ID NOT IN (SELECT MIN(USER_LIKES_ID) FROM PUBLIC.USER_LIKES GROUP BY FILM_ID, USER_ID);
+ALTER TABLE PUBLIC.USER_LIKES ADD CONSTRAINT IF NOT EXISTS USER_LIKES_FILM_USER_UNIQUE UNIQUE (FILM_ID, USER_ID);
+
+UPDATE PUBLIC.FRIENDSHIP AS f
+SET FRIENDSHIP_STATUS = TRUE
+WHERE NOT FRIENDSHIP_STATUS AND EXISTS (SELECT 1 FROM PUBLIC.FRIENDSHIP AS d
+	WHERE d.FRIEND_ONE_ID = f.FRIEND_ONE_ID AND d.FRIEND_TWO_ID = f.FRIEND_TWO_ID AND d.FRIENDSHIP_STATUS);
+DELETE FROM PUBLIC.FRIENDSHIP
+WHERE FRIENDSHIP_ID NOT IN (SELECT MIN(FRIENDSHIP_ID) FROM PUBLIC.FRIENDSHIP GROUP BY FRIEND_ONE_ID, FRIEND_TWO_ID);
+ALTER TABLE PUBLIC.FRIENDSHIP ADD CONSTRAINT IF NOT EXISTS FRIENDSHIP_FRIENDS_UNIQUE UNIQUE (FRIEND_ONE_ID, FRIEND_TWO_ID);
+CREATE INDEX IF NOT EXISTS FRIENDSHIP_FRIEND_TWO_IDX ON PUBLIC.FRIENDSHIP (FRIEND_TWO_ID, FRIEND_ONE_ID, FRIENDSHIP_STATUS);
+
+CREATE INDEX IF NOT EXISTS FRIEND_LINKS_FRIEND_IDX ON PUBLIC.FRIEND_LINKS (FRIEND_ID, USER_ID);
+DELETE FROM PUBLIC.FRIEND_LINKS AS l
+WHERE NOT EXISTS (SELECT 1 FROM PUBLIC.FRIENDSHIP AS f WHERE f.FRIEND_ONE_ID = l.USER_ID AND f.FRIEND_TWO_ID = l.FRIEND_ID)
+	AND NOT EXISTS (SELECT 1 FROM PUBLIC.FRIENDSHIP AS f
+	WHERE f.FRIEND_ONE_ID = l.FRIEND_ID AND f.FRIEND_TWO_ID = l.USER_ID AND f.FRIENDSHIP_STATUS);
+INSERT INTO PUBLIC.FRIEND_LINKS (USER_ID, FRIEND_ID)
+SELECT s.USER_ID, s.FRIEND_ID
+FROM (SELECT FRIEND_ONE_ID AS USER_ID, FRIEND_TWO_ID AS FRIEND_ID FROM PUBLIC.FRIENDSHIP
+	UNION
+	SELECT FRIEND_TWO_ID, FRIEND_ONE_ID FROM PUBLIC.FRIENDSHIP WHERE FRIENDSHIP_STATUS) AS s
+WHERE NOT EXISTS (SELECT 1 FROM PUBLIC.FRIEND_LINKS AS l WHERE l.USER_ID = s.USER_ID AND l.FRIEND_ID = s.FRIEND_ID);
+
+ALTER TABLE PUBLIC.FILMS ADD COLUMN IF NOT EXISTS LIKE_COUNT INTEGER DEFAULT 0 NOT NULL;
+UPDATE PUBLIC.FILMS AS f
+SET LIKE_COUNT = (SELECT COUNT(*) FROM PUBLIC.USER_LIKES AS ul WHERE ul.FILM_ID = f.FILM_ID)
+WHERE LIKE_COUNT <> (SELECT COUNT(*) FROM PUBLIC.USER_LIKES AS ul WHERE ul.FILM_ID = f.FILM_ID);
+CREATE INDEX IF NOT EXISTS FILMS_LIKE_COUNT_IDX ON PUBLIC.FILMS (LIKE_COUNT DESC, FILM_ID);
+ALTER TABLE PUBLIC.FILMS ADD COLUMN IF NOT EXISTS LIKE_VERSION BIGINT DEFAULT 0 NOT NULL;
+
+ALTER TABLE PUBLIC.USER_LIKES ADD COLUMN IF NOT EXISTS LIKED_AT TIMESTAMP WITH TIME ZONE;
+CREATE INDEX IF NOT EXISTS USER_LIKES_LIKED_AT_IDX ON PUBLIC.USER_LIKES (LIKED_AT);
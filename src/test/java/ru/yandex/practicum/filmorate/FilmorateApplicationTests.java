@@ -5,24 +5,46 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.exception.NoSuitableUnitException;
 import ru.yandex.practicum.filmorate.exception.NotUniqueEntityException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Distance;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
 import ru.yandex.practicum.filmorate.model.Genres;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.MpaService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.MembershipFilters;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.film.LikeSimilarityIndex;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserProjection;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,9 +59,18 @@ class FilmorateApplicationTests {
     private final GenreDbStorage genreStorage;
     private final MpaDbStorage mpaStorage;
     private final MpaService mpaService;
+    private final FilmLeaderboard filmLeaderboard;
+    private final FilmCache filmCache;
+    private final FriendGraph friendGraph;
+    private final MembershipFilters membershipFilters;
+    private final LikeGraph likeGraph;
+    private final JdbcTemplate jdbcTemplate;
 
     public void deleteAllUsersData() {
         userStorage.deleteAllUsers();
+        filmLeaderboard.rebuild();
+        filmCache.invalidateAll();
+        likeGraph.rebuild();
     }
 
     public void deleteAllFilmsData() {
@@ -167,6 +198,32 @@ class FilmorateApplicationTests {
                 "Количество пользователей в БД не соответсвует реальному количеству!");
     }
 
+    @Test
+    void getUsersPage() {
+        deleteAllUsersData();
+        User user1 = new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>());
+        User user2 = new User(null, "ivanov2@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>());
+        User user3 = new User(null, "ivanov3@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>());
+        userService.create(user1);
+        userService.create(user2);
+        userService.create(user3);
+        userService.addFriend(user2.getId(), user3.getId());
+
+        Page<User> firstPage = userService.getPage(user1.getId(), 1);
+        assertEquals(List.of(user2.getId()), List.of(firstPage.getItems().get(0).getId()),
+                "Страница пользователей начинается не с пользователя, следующего за курсором!");
+        assertEquals(Set.of(user3.getId()), firstPage.getItems().get(0).getFriendsIds(),
+                "У пользователя на странице неверно загружены друзья!");
+        assertEquals(user2.getId(), firstPage.getNextCursor(), "Курсор следующей страницы неверный!");
+
+        Page<User> lastPage = userService.getPage(firstPage.getNextCursor(), 5);
+        assertEquals(1, lastPage.getItems().size(), "Последняя страница содержит неверное количество пользователей!");
+        assertNull(lastPage.getNextCursor(), "У последней страницы есть курсор следующей страницы!");
+    }
+
     @Test
     void getAllUserWithId() {
         deleteAllUsersData();
@@ -214,6 +271,28 @@ class FilmorateApplicationTests {
                 "Список друзей пользователя содержит id удаленного друга");
     }
 
+    @Test
+    void returnFriendsAfterAddingAndDeletingFriend() {
+        deleteAllUsersData();
+        Long userId = userStorage.create(new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long firstFriendId = userStorage.create(new User(null, "ivanov2@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long secondFriendId = userStorage.create(new User(null, "ivanov3@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+
+        assertEquals(Set.of(firstFriendId), userService.addFriend(userId, firstFriendId),
+                "В ответе на добавление нет только что добавленного друга!");
+        assertEquals(Set.of(firstFriendId, secondFriendId), userService.addFriend(userId, secondFriendId),
+                "В ответе на добавление неверный список друзей!");
+        assertEquals(Set.of(secondFriendId), userService.deleteFriend(userId, firstFriendId),
+                "В ответе на удаление остался только что удаленный друг!");
+        assertEquals(Set.of(secondFriendId), userService.getFriends(userId).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toSet()),
+                "Граф дружбы не обновлен после коммита!");
+    }
+
     @Test
     void getFriendsIds() {
         deleteAllUsersData();
@@ -411,6 +490,83 @@ class FilmorateApplicationTests {
                 "Размер списка фильмов в БД не соответствует числу добавленных фильмов!");
     }
 
+    @Test
+    void getAllFilmsWithGenresAndLikes() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film1 = new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                List.of(new Genres(2, null), new Genres(1, null)), new Mpa(3, "PG-13"),
+                LocalDate.of(2000, 01, 01), 100, null);
+        Film film2 = new Film(null, "Scary Movie 2", "Amecican comedy movie from 2005",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2005, 03, 04), 99, null);
+        filmStorage.create(film1);
+        filmStorage.create(film2);
+        User user = new User(null, "ivanov@ya.ru", "Iv", null,
+                LocalDate.of(2000, 01, 01), new HashSet<>(), new HashSet<>());
+        userStorage.create(user);
+        filmStorage.putLike(film1.getId(), user.getId());
+
+        List<Film> films = filmStorage.get();
+        assertEquals(List.of(film1.getId(), film2.getId()), List.of(films.get(0).getId(), films.get(1).getId()),
+                "Фильмы из БД получены не в порядке возрастания id!");
+        assertEquals(List.of(new Genres(1, "Комедия"), new Genres(2, "Драма")), films.get(0).getGenres(),
+                "Жанры фильма, полученного из БД, не соответствуют добавленным!");
+        assertTrue(films.get(1).getGenres().isEmpty(), "У фильма без жанров в БД появились жанры!");
+        assertEquals(Set.of(user.getId()), films.get(0).getUserLikes(),
+                "Лайки фильма, полученного из БД, не соответствуют поставленным!");
+        assertEquals(Set.of(user.getId()), filmStorage.getValues().get(film1.getId()).getUserLikes(),
+                "Лайки фильма, полученного из БД, не соответствуют поставленным!");
+    }
+
+    @Test
+    void getFilmsPage() {
+        deleteAllFilmsData();
+        for (int i = 1; i <= 5; i++) {
+            filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie",
+                    List.of(new Genres(1, "Комедия")), new Mpa(3, "PG-13"),
+                    LocalDate.of(2000 + i, 01, 01), 100, null));
+        }
+
+        Page<Film> firstPage = filmService.getPage(null, 2);
+        assertEquals(2, firstPage.getItems().size(), "Размер страницы не соответствует запрошенному!");
+        assertEquals("Scary Movie 1", firstPage.getItems().get(0).getName(),
+                "Первая страница начинается не с первого фильма!");
+        assertEquals(1, firstPage.getItems().get(0).getGenres().size(),
+                "У фильма на странице не загружены жанры!");
+
+        Page<Film> secondPage = filmService.getPage(firstPage.getNextCursor(), 2);
+        assertEquals("Scary Movie 3", secondPage.getItems().get(0).getName(),
+                "Вторая страница начинается не с фильма, следующего за курсором!");
+
+        Page<Film> lastPage = filmService.getPage(secondPage.getNextCursor(), 2);
+        assertEquals(1, lastPage.getItems().size(), "Последняя страница содержит неверное количество фильмов!");
+        assertNull(lastPage.getNextCursor(), "У последней страницы есть курсор следующей страницы!");
+    }
+
+    @Test
+    void exportAllFilms() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film1 = new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                List.of(new Genres(2, null), new Genres(1, null)), new Mpa(3, "PG-13"),
+                LocalDate.of(2000, 01, 01), 100, null);
+        Film film2 = new Film(null, "Scary Movie 2", "Amecican comedy movie from 2005",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2005, 03, 04), 99, null);
+        filmStorage.create(film1);
+        filmStorage.create(film2);
+        User user = new User(null, "ivanov@ya.ru", "Iv", null,
+                LocalDate.of(2000, 01, 01), new HashSet<>(), new HashSet<>());
+        userStorage.create(user);
+        filmStorage.putLike(film2.getId(), user.getId());
+
+        List<Film> exportedFilms = new ArrayList<>();
+        filmService.export(exportedFilms::add);
+
+        assertEquals(filmStorage.get(), exportedFilms, "Выгруженные фильмы не соответствуют фильмам в БД!");
+    }
+
     @Test
     void getFilmWithCorrectId() {
         deleteAllFilmsData();
@@ -522,17 +678,225 @@ class FilmorateApplicationTests {
         filmService.putLike(film3.getId(), user2.getId());
 
         System.out.println("Популярные фильмы: " + filmService.getMostLikedFilms(3));
-        assertTrue(filmService.getMostLikedFilms(3).size() == 2,
+        assertEquals(3, filmService.getMostLikedFilms(3).size(),
+                "При достаточном числе фильмов список популярных фильмов короче запрошенного!");
+        assertTrue(filmService.getMostLikedFilms(2).size() == 2,
                 "Размер списка наиболее популярных фильмов не превышает установленный лимит либо содержит " +
                         "не все популярные фильмы");
-        assertTrue(filmService.getMostLikedFilms(3).contains(filmService.get(film1.getId())),
+        assertTrue(filmService.getMostLikedFilms(2).contains(filmService.get(film1.getId())),
                 "Список популярных фильмов не содержит популярного фильма " + film1);
-        assertTrue(filmService.getMostLikedFilms(3).contains(filmService.get(film3.getId())),
+        assertTrue(filmService.getMostLikedFilms(2).contains(filmService.get(film3.getId())),
                 "Список популярных фильмов не содержит популярного фильма " + film3);
-        assertFalse(filmService.getMostLikedFilms(3).contains(filmService.get(film2.getId())),
+        assertFalse(filmService.getMostLikedFilms(2).contains(filmService.get(film2.getId())),
                 "Список популярных фильмов содержит непопулярный фильм " + film2);
     }
 
+    @Test
+    void getPopularFilmsByLikeCount() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film1 = new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2000, 01, 01), 100, null);
+        Film film2 = new Film(null, "Scary Movie 2", "Amecican comedy movie from 2005",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2005, 03, 04), 99, null);
+        filmStorage.create(film1);
+        filmStorage.create(film2);
+        User user1 = new User(null, "ivanov@ya.ru", "Iv", null,
+                LocalDate.of(2000, 01, 01), new HashSet<>(), new HashSet<>());
+        User user2 = new User(null, "ivanov2@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>());
+        userStorage.create(user1);
+        userStorage.create(user2);
+        filmStorage.putLike(film1.getId(), user1.getId());
+        filmStorage.putLike(film2.getId(), user1.getId());
+        filmStorage.putLike(film2.getId(), user2.getId());
+        filmStorage.putLike(film2.getId(), user2.getId());
+
+        List<Film> popularFilms = filmStorage.getPopular(2);
+        assertEquals(film2.getId(), popularFilms.get(0).getId(),
+                "Первым в списке популярных фильмов стоит фильм с меньшим числом лайков!");
+        assertEquals(2, popularFilms.get(0).getAllLikesCount(),
+                "Повторный лайк от пользователя увеличил число лайков фильма!");
+
+        filmStorage.deleteLike(film2.getId(), user1.getId());
+        filmStorage.deleteLike(film2.getId(), user2.getId());
+        assertEquals(1, filmStorage.get(film1.getId()).getAllLikesCount(),
+                "Удаление лайков у одного фильма затронуло лайки другого фильма!");
+        assertEquals(film1.getId(), filmStorage.getPopular(1).get(0).getId(),
+                "После удаления лайков список популярных фильмов не изменился!");
+    }
+
+    @Test
+    void keepLeaderboardConsistentUnderConcurrentLikes() throws InterruptedException {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Film film = new Film(null, "Scary Movie " + i, "Amecican comedy movie",
+                    null, new Mpa(3, "PG-13"),
+                    LocalDate.of(2000 + i, 01, 01), 100, null);
+            films.add(filmStorage.create(film));
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            User user = new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>());
+            users.add(userStorage.create(user));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        for (User user : users) {
+            executor.submit(() -> {
+                for (int i = 0; i < 30; i++) {
+                    Film film = films.get(i % films.size());
+                    filmStorage.putLike(film.getId(), user.getId());
+                    if (i % 2 == 0) {
+                        filmStorage.deleteLike(film.getId(), user.getId());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "Потоки не успели поставить лайки!");
+
+        assertEquals(0, filmLeaderboard.verify(), "Рейтинг популярных фильмов разошелся с БД!");
+        List<Long> expectedOrder = filmStorage.get().stream()
+                .sorted(Comparator.comparing(Film::getAllLikesCount).reversed().thenComparing(Film::getId))
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        assertEquals(expectedOrder, filmLeaderboard.getTop(3),
+                "Порядок фильмов в рейтинге не соответствует числу лайков в БД!");
+    }
+
+    @Test
+    void rebuildLeaderboardUnderConcurrentLikes() throws InterruptedException {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            films.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000 + i, 01, 01), 100, null)));
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            users.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())));
+        }
+
+        AtomicBoolean liking = new AtomicBoolean(true);
+        AtomicInteger incompleteTops = new AtomicInteger();
+        ExecutorService background = Executors.newFixedThreadPool(2);
+        background.submit(() -> {
+            while (liking.get()) {
+                filmLeaderboard.rebuild();
+            }
+        });
+        background.submit(() -> {
+            while (liking.get()) {
+                if (filmLeaderboard.getTop(3).size() != 3) {
+                    incompleteTops.incrementAndGet();
+                }
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        for (User user : users) {
+            executor.submit(() -> {
+                for (int i = 0; i < 30; i++) {
+                    Film film = films.get(i % films.size());
+                    filmStorage.putLike(film.getId(), user.getId());
+                    if (i % 2 == 0) {
+                        filmStorage.deleteLike(film.getId(), user.getId());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "Потоки не успели поставить лайки!");
+        liking.set(false);
+        background.shutdown();
+        assertTrue(background.awaitTermination(1, TimeUnit.MINUTES), "Перестроение рейтинга не завершилось!");
+
+        assertEquals(0, incompleteTops.get(), "Во время перестроения рейтинг был прочитан неполным!");
+        assertEquals(0, filmLeaderboard.verify(), "Рейтинг популярных фильмов разошелся с БД после перестроения!");
+    }
+
+    @Test
+    void repairLeaderboardOnVerify() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film1 = filmStorage.create(new Film(null, "Scary Movie 1", "Amecican comedy movie",
+                null, new Mpa(3, "PG-13"), LocalDate.of(2001, 01, 01), 100, null));
+        Film film2 = filmStorage.create(new Film(null, "Scary Movie 2", "Amecican comedy movie",
+                null, new Mpa(3, "PG-13"), LocalDate.of(2002, 01, 01), 100, null));
+        jdbcTemplate.update("UPDATE films SET like_count = 5, like_version = like_version + 1 WHERE film_id = ?;",
+                film2.getId());
+
+        assertEquals(1, filmLeaderboard.verify(), "Расхождение рейтинга с БД не найдено!");
+        assertEquals(List.of(film2.getId(), film1.getId()), filmLeaderboard.getTop(2),
+                "Рейтинг не перестроен после найденного расхождения!");
+        assertEquals(0, filmLeaderboard.verify(), "Рейтинг расходится с БД после перестроения!");
+    }
+
+    @Test
+    void getPopularFilmsByGenreRatingAndYear() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        Film film1 = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie",
+                List.of(new Genres(1, null)), new Mpa(1, "G"), LocalDate.of(2000, 01, 01), 100, null));
+        Film film2 = filmStorage.create(new Film(null, "Scary Movie 2", "Amecican comedy movie",
+                List.of(new Genres(2, null)), new Mpa(1, "G"), LocalDate.of(2000, 06, 01), 100, null));
+        Film film3 = filmStorage.create(new Film(null, "Scary Movie 3", "Amecican comedy movie",
+                List.of(new Genres(1, null), new Genres(2, null)), new Mpa(3, "PG-13"),
+                LocalDate.of(2005, 01, 01), 100, null));
+        Film film4 = filmStorage.create(new Film(null, "Scary Movie 4", "Amecican comedy movie",
+                null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null));
+        for (int i = 0; i < 3; i++) {
+            filmService.putLike(film1.getId(), userIds.get(i));
+        }
+        filmService.putLike(film2.getId(), userIds.get(0));
+        filmService.putLike(film2.getId(), userIds.get(1));
+        filmService.putLike(film3.getId(), userIds.get(0));
+
+        assertEquals(List.of(film1.getId(), film3.getId()), getPopularIds(1, null, null),
+                "Популярные фильмы жанра отобраны неверно!");
+        assertEquals(List.of(film3.getId(), film4.getId()), getPopularIds(null, 3, null),
+                "Популярные фильмы рейтинга отобраны неверно!");
+        assertEquals(List.of(film1.getId(), film2.getId(), film4.getId()), getPopularIds(null, null, 2000),
+                "Популярные фильмы года отобраны неверно!");
+        assertEquals(List.of(film2.getId()), getPopularIds(2, null, 2000),
+                "Не применены одновременно фильтры по жанру и году!");
+        assertEquals(List.of(film3.getId()), getPopularIds(1, 3, 2005),
+                "Не применены одновременно все фильтры!");
+        assertEquals(List.of(), getPopularIds(6, null, 1990), "Найдены фильмы несуществующего среза!");
+
+        film4.setGenres(List.of(new Genres(2, null)));
+        film4.setReleaseDate(LocalDate.of(2005, 01, 01));
+        filmService.update(film4);
+        filmService.putLike(film3.getId(), userIds.get(1));
+        filmService.putLike(film3.getId(), userIds.get(2));
+        List<Long> dramas = getPopularIds(2, null, null);
+        assertEquals(List.of(film3.getId(), film2.getId(), film4.getId()), dramas,
+                "Срезы не обновлены после изменения фильма и лайков!");
+        assertEquals(List.of(film1.getId(), film2.getId()), getPopularIds(null, null, 2000),
+                "Фильм остался в срезе старого года выпуска!");
+
+        filmLeaderboard.rebuild();
+        assertEquals(dramas, getPopularIds(2, null, null), "Перестроенные срезы не совпадают с обновленными!");
+    }
+
+    private List<Long> getPopularIds(Integer genreId, Integer mpaId, Integer year) {
+        return filmService.getMostLikedFilms(10, genreId, mpaId, year).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
     @Test
     void getAllGenres() {
         List<Genres> allGenres = genreStorage.get();
@@ -570,6 +934,27 @@ class FilmorateApplicationTests {
         genreStorage.update(genres2);
     }
 
+    @Test
+    void hydrateFilmsFromReferenceSnapshot() {
+        deleteAllFilmsData();
+        Film film = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                List.of(new Genres(1, null)), new Mpa(3, null),
+                LocalDate.of(2000, 01, 01), 100, null));
+
+        Film savedFilm = filmStorage.get(film.getId());
+        assertEquals(genreStorage.get(1L), savedFilm.getGenres().get(0), "Жанр фильма не взят из справочника!");
+        assertEquals(mpaStorage.get(3L), savedFilm.getMpa(), "Рейтинг фильма не взят из справочника!");
+        savedFilm.getGenres().get(0).setName("Драма");
+        savedFilm.getMpa().setName("R");
+        assertEquals("Комедия", genreStorage.get(1L).getName(), "Изменение жанра фильма попало в справочник!");
+        assertEquals("PG-13", mpaStorage.get(3L).getName(), "Изменение рейтинга фильма попало в справочник!");
+
+        genreStorage.update(new Genres(1, "Трагикомедия"));
+        assertEquals("Трагикомедия", filmStorage.get(film.getId()).getGenres().get(0).getName(),
+                "После изменения жанра фильм получен со старым названием жанра!");
+        genreStorage.update(new Genres(1, "Комедия"));
+    }
+
 
     @Test
     void getAllMpa() {
@@ -614,4 +999,516 @@ class FilmorateApplicationTests {
         Mpa mpa2 = new Mpa(1, "G");
         mpaStorage.update(mpa2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void serveFilmFromCacheAndInvalidateOnWrites() {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2000, 01, 01), 100, null));
+        User user = userStorage.create(new User(null, "ivanov@ya.ru", "Iv", null,
+                LocalDate.of(2000, 01, 01), new HashSet<>(), new HashSet<>()));
+
+        CacheStats statsBefore = filmCache.getStats();
+        filmStorage.get(film.getId());
+        filmStorage.get(film.getId()).getUserLikes().add(100L);
+        CacheStats statsAfter = filmCache.getStats();
+        assertEquals(statsBefore.getMisses() + 1, statsAfter.getMisses(), "Первое чтение фильма не было промахом кэша!");
+        assertEquals(statsBefore.getHits() + 1, statsAfter.getHits(), "Повторное чтение фильма не попало в кэш!");
+        assertTrue(filmStorage.get(film.getId()).getUserLikes().isEmpty(),
+                "Изменение фильма, полученного из кэша, попало в кэш!");
+
+        filmStorage.putLike(film.getId(), user.getId());
+        assertEquals(1, filmStorage.get(film.getId()).getAllLikesCount(), "Кэш не сброшен после добавления лайка!");
+        filmStorage.deleteLike(film.getId(), user.getId());
+        assertEquals(0, filmStorage.get(film.getId()).getAllLikesCount(), "Кэш не сброшен после удаления лайка!");
+
+        film.setName("Scary Movie 2");
+        filmStorage.update(film);
+        assertEquals("Scary Movie 2", filmStorage.get(film.getId()).getName(), "Кэш не сброшен после обновления фильма!");
+    }
+
+    @Test
+    void importFilmsBatch() {
+        deleteAllFilmsData();
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            films.add(new Film(null, "Scary Movie " + i, "Amecican comedy movie",
+                    List.of(new Genres(2, null), new Genres(1, null), new Genres(2, null)), new Mpa(3, null),
+                    LocalDate.of(2000, 01, 01), 100, null));
+        }
+        films.set(10, new Film(null, "Scary Movie", "Amecican comedy movie", null, new Mpa(100, null),
+                LocalDate.of(2000, 01, 01), 100, null));
+        films.set(600, new Film(null, "Scary Movie", "Amecican comedy movie", null, new Mpa(3, null),
+                LocalDate.of(1800, 01, 01), 100, null));
+        films.set(1100, new Film(null, "Scary Movie", "Amecican comedy movie", List.of(new Genres(100, null)),
+                new Mpa(3, null), LocalDate.of(2000, 01, 01), 100, null));
+
+        List<FilmImportResult> results = filmService.createAll(films);
+
+        assertEquals(films.size(), results.size(), "Количество результатов не совпадает с количеством фильмов!");
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex(), "Результаты импорта идут не в порядке запроса!");
+        }
+        assertNotNull(results.get(10).getError(), "Фильм с неверным рейтингом добавлен в БД!");
+        assertNotNull(results.get(600).getError(), "Фильм с неверной датой выхода добавлен в БД!");
+        assertNotNull(results.get(1100).getError(), "Фильм с неверным жанром добавлен в БД!");
+        assertEquals(1197, filmStorage.get().size(), "В БД добавлены не все корректные фильмы!");
+
+        Film importedFilm = filmStorage.get(results.get(1199).getId());
+        assertEquals("Scary Movie 1200", importedFilm.getName(), "Фильму присвоен чужой id!");
+        assertEquals(List.of(genreStorage.get(1L), genreStorage.get(2L)), importedFilm.getGenres(),
+                "Жанры фильма сохранены неверно!");
+    }
+
+    @Test
+    void createIdenticalFilmsWithDistinctIds() {
+        deleteAllFilmsData();
+        Film film1 = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                List.of(new Genres(1, null)), new Mpa(3, null),
+                LocalDate.of(2000, 01, 01), 100, null));
+        Film film2 = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                List.of(new Genres(1, null)), new Mpa(3, null),
+                LocalDate.of(2000, 01, 01), 100, null));
+
+        assertNotEquals(film1.getId(), film2.getId(), "Одинаковым фильмам присвоен один и тот же id!");
+        assertEquals(List.of(genreStorage.get(1L)), filmStorage.get(film2.getId()).getGenres(),
+                "Жанры второго из одинаковых фильмов сохранены неверно!");
+    }
+
+    @Test
+    void keepLikesAndFriendshipsUniqueUnderConcurrentWrites() throws InterruptedException {
+        deleteAllFilmsData();
+        deleteAllUsersData();
+        Film film = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                null, new Mpa(3, "PG-13"),
+                LocalDate.of(2000, 01, 01), 100, null));
+        User user = userStorage.create(new User(null, "ivanov@ya.ru", "Iv", null,
+                LocalDate.of(2000, 01, 01), new HashSet<>(), new HashSet<>()));
+        User friend = userStorage.create(new User(null, "ivanov2@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(() -> {
+                filmStorage.putLike(film.getId(), user.getId());
+                userStorage.addFriend(user.getId(), friend.getId());
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "Потоки не успели выполнить запросы!");
+
+        assertEquals(Set.of(user.getId()), filmStorage.get(film.getId()).getUserLikes(),
+                "Повторные лайки от одного пользователя сохранены в БД!");
+        assertEquals(0, filmLeaderboard.verify(), "Рейтинг популярных фильмов разошелся с БД!");
+        assertEquals(Set.of(friend.getId()), userStorage.get(user.getId()).getFriendsIds(),
+                "Повторные заявки в друзья сохранены в БД неверно!");
+    }
+
+    @Test
+    void keepFriendGraphConsistentWithFriendship() {
+        deleteAllUsersData();
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            users.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())));
+        }
+        Long first = users.get(0).getId();
+        Long second = users.get(1).getId();
+        Long third = users.get(2).getId();
+        Long fourth = users.get(3).getId();
+
+        userService.addFriend(first, third);
+        userService.addFriend(first, fourth);
+        userService.addFriend(second, third);
+        userService.addFriend(fourth, second);
+        userService.addFriend(fourth, second);
+
+        assertArrayEquals(new long[]{third, fourth}, userStorage.getFriendIds(first),
+                "Список друзей пользователя сформирован неверно!");
+        assertArrayEquals(new long[0], userStorage.getFriendIds(third),
+                "Неподтвержденная заявка в друзья попала в список друзей получателя!");
+        assertArrayEquals(new long[]{third, fourth}, userStorage.getFriendIds(second),
+                "Подтвержденная заявка в друзья не попала в список друзей получателя!");
+        assertEquals(List.of(third, fourth), userService.getCommonFriends(first, second).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Список общих друзей сформирован неверно!");
+
+        userService.deleteFriend(second, fourth);
+        assertArrayEquals(new long[]{third}, userStorage.getFriendIds(second),
+                "После удаления друга он остался в списке друзей!");
+
+        long[] friendsBeforeRebuild = userStorage.getFriendIds(first);
+        friendGraph.rebuild();
+        assertArrayEquals(friendsBeforeRebuild, userStorage.getFriendIds(first),
+                "Граф дружбы в памяти разошелся с БД!");
+    }
+
+    @Test
+    void getUsersByIdsInChunks() {
+        deleteAllUsersData();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            ids.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        Long userId = ids.get(0);
+        for (Long friendId : ids.subList(1, ids.size())) {
+            userService.addFriend(userId, friendId);
+        }
+        userService.addFriend(ids.get(1100), userId);
+
+        List<User> friends = userService.getFriends(userId);
+        assertEquals(ids.subList(1, ids.size()), friends.stream().map(User::getId).collect(Collectors.toList()),
+                "Список друзей пользователя получен не полностью или не по порядку!");
+        assertEquals(Set.of(userId), friends.get(1099).getFriendsIds(), "Друзья пользователей загружены неверно!");
+
+        List<Long> requestedIds = List.of(ids.get(700), ids.get(5), -1L, ids.get(700));
+        assertEquals(List.of(ids.get(700), ids.get(5), ids.get(700)), userStorage.getByIds(requestedIds).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Пользователи по списку id получены неверно!");
+    }
+
+    @Test
+    void suggestFriendsByMutualFriendsCount() {
+        deleteAllUsersData();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            ids.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        Long userId = ids.get(0);
+        userService.addFriend(userId, ids.get(1));
+        userService.addFriend(userId, ids.get(2));
+        userService.addFriend(ids.get(1), ids.get(3));
+        userService.addFriend(ids.get(1), ids.get(4));
+        userService.addFriend(ids.get(2), ids.get(4));
+        userService.addFriend(ids.get(2), ids.get(1));
+        userService.addFriend(ids.get(5), ids.get(2));
+
+        assertEquals(List.of(ids.get(4), ids.get(3)), userService.getSuggestions(userId, 10).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Рекомендованные друзья отобраны или упорядочены неверно!");
+        assertEquals(List.of(ids.get(4)), userService.getSuggestions(userId, 1).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Количество рекомендованных друзей не ограничено параметром limit!");
+        assertThrows(ValidationException.class, () -> userService.getSuggestions(userId, 0),
+                "Запрос рекомендаций с неположительным limit не отклонен!");
+    }
+
+    @Test
+    void findDistanceBetweenUsers() {
+        deleteAllUsersData();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            ids.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        userService.addFriend(ids.get(0), ids.get(1));
+        userService.addFriend(ids.get(2), ids.get(1));
+        userService.addFriend(ids.get(2), ids.get(3));
+        userService.addFriend(ids.get(4), ids.get(3));
+        userService.addFriend(ids.get(0), ids.get(5));
+        userService.addFriend(ids.get(5), ids.get(3));
+
+        Distance distance = userService.getDistance(ids.get(0), ids.get(4), 6, true);
+        assertEquals(3, distance.getDistance(), "Длина кратчайшего пути между пользователями найдена неверно!");
+        assertEquals(List.of(ids.get(0), ids.get(5), ids.get(3), ids.get(4)), distance.getPath(),
+                "Кратчайший путь между пользователями найден неверно!");
+        assertNull(userService.getDistance(ids.get(0), ids.get(4), 6, false).getPath(),
+                "Путь между пользователями возвращен, хотя не был запрошен!");
+        assertEquals(0, userService.getDistance(ids.get(2), ids.get(2), 6, false).getDistance(),
+                "Расстояние от пользователя до себя не равно нулю!");
+        assertThrows(NoSuitableUnitException.class, () -> userService.getDistance(ids.get(0), ids.get(4), 2, false),
+                "Найден путь длиннее максимально допустимого!");
+    }
+
+    @Test
+    void readUsersInRequestedProjection() {
+        deleteAllUsersData();
+        Long userId = userStorage.create(new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long friendId = userStorage.create(new User(null, "petrov@ya.ru", "Petr", "Petr",
+                LocalDate.of(2011, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        userService.addFriend(userId, friendId);
+
+        User core = userStorage.get(userId, UserProjection.CORE);
+        assertEquals("ivanov@ya.ru", core.getEmail(), "Поля пользователя в проекции CORE прочитаны неверно!");
+        assertNull(core.getFriendsIds(), "В проекции CORE прочитаны друзья!");
+        assertNull(core.getLikedFilmsIds(), "В проекции CORE прочитаны лайки!");
+
+        Map<Long, User> users = userStorage.get().stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        assertEquals(Set.of(friendId), users.get(userId).getFriendsIds(), "Друзья пользователей загружены неверно!");
+        assertEquals(Set.of(), users.get(friendId).getFriendsIds(), "Друзья пользователей загружены неверно!");
+        assertEquals(users.get(userId), userStorage.get(userId), "Пользователь в полной проекции прочитан неверно!");
+    }
+
+    @Test
+    void checkExistenceOfSeveralUsersAndFilms() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        Long userId = userStorage.create(new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long otherUserId = userStorage.create(new User(null, "petrov@ya.ru", "Petr", "Petr",
+                LocalDate.of(2011, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long filmId = filmStorage.create(new Film(null, "Scary Movie", "Amecican comedy movie from 2000",
+                null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId();
+
+        assertTrue(userStorage.doUsersExist(userId, otherUserId, userId), "Существующие пользователи не найдены!");
+        assertFalse(userStorage.doUsersExist(userId, otherUserId + 1), "Найден несуществующий пользователь!");
+        assertFalse(userStorage.doUsersExist(userId, null), "Найден пользователь с пустым id!");
+        assertTrue(filmStorage.doFilmsExist(filmId, filmId), "Существующий фильм не найден!");
+        assertFalse(filmStorage.doFilmsExist(filmId, filmId + 1), "Найден несуществующий фильм!");
+    }
+
+    @Test
+    void answerMissingIdsAndTakenEmailsWithMembershipFilters() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        User user = userStorage.create(new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>()));
+        User other = userStorage.create(new User(null, "petrov@ya.ru", "Petr", "Petr",
+                LocalDate.of(2011, 01, 01), new HashSet<>(), new HashSet<>()));
+        List<FilmImportResult> results = filmStorage.createAll(List.of(new Film(null, "Scary Movie",
+                "Amecican comedy movie from 2000", null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01),
+                100, null)));
+
+        assertTrue(membershipFilters.mightContainUser(user.getId()), "Добавленный пользователь не попал в фильтр!");
+        assertTrue(membershipFilters.mightContainEmail("IVANOV@ya.ru"), "Email пользователя не попал в фильтр!");
+        assertTrue(membershipFilters.mightContainFilm(results.get(0).getId()), "Добавленный фильм не попал в фильтр!");
+        assertThrows(NoSuitableUnitException.class, () -> userStorage.get(other.getId() + 1000),
+                "Получен несуществующий пользователь!");
+        assertThrows(NoSuitableUnitException.class, () -> filmStorage.get(results.get(0).getId() + 1000),
+                "Получен несуществующий фильм!");
+        assertThrows(NotUniqueEntityException.class, () -> userStorage.create(new User(null, "Ivanov@Ya.ru",
+                        "Ivan2", "Ivan", LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())),
+                "Добавлен пользователь с занятым email!");
+        other.setEmail("ivanov@ya.ru");
+        assertThrows(ValidationException.class, () -> userStorage.update(other),
+                "Email пользователя изменен на занятый!");
+        user.setLogin("Iv");
+        assertEquals("Iv", userStorage.update(user).getLogin(), "Пользователь с прежним email не обновлен!");
+
+        userStorage.deleteAllUsers();
+        assertFalse(membershipFilters.mightContainEmail("ivanov@ya.ru"),
+                "Фильтр email не перестроен после удаления пользователей!");
+    }
+
+    @Test
+    void countMutualFriendsForSeveralUsers() {
+        deleteAllUsersData();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            ids.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        Long userId = ids.get(0);
+        userService.addFriend(userId, ids.get(1));
+        userService.addFriend(userId, ids.get(2));
+        userService.addFriend(ids.get(3), ids.get(1));
+        userService.addFriend(ids.get(3), ids.get(2));
+        userService.addFriend(ids.get(4), ids.get(2));
+
+        Map<Long, Integer> counts = userService.getMutualFriendCounts(userId,
+                List.of(ids.get(3), ids.get(4), ids.get(1), -1L, ids.get(3)));
+        assertEquals(List.of(ids.get(3), ids.get(4), ids.get(1), -1L), new ArrayList<>(counts.keySet()),
+                "Счетчики общих друзей возвращены не в порядке запроса!");
+        assertEquals(List.of(2, 1, 0, 0), new ArrayList<>(counts.values()), "Общие друзья подсчитаны неверно!");
+        for (Long otherId : ids.subList(1, ids.size())) {
+            assertEquals(userService.getCommonFriends(userId, otherId).size(),
+                    userService.getMutualFriendCounts(userId, List.of(otherId)).get(otherId),
+                    "Счетчик общих друзей не совпадает со списком общих друзей!");
+        }
+        assertThrows(NoSuitableUnitException.class, () -> userService.getMutualFriendCounts(-1L, List.of(userId)),
+                "Подсчитаны общие друзья несуществующего пользователя!");
+    }
+
+    @Test
+    void recommendFilmsLikedByTheSameUsers() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+        filmService.putLike(filmIds.get(0), userIds.get(0));
+        filmService.putLike(filmIds.get(0), userIds.get(1));
+        filmService.putLike(filmIds.get(0), userIds.get(2));
+        filmService.putLike(filmIds.get(1), userIds.get(0));
+        filmService.putLike(filmIds.get(2), userIds.get(1));
+        filmService.putLike(filmIds.get(2), userIds.get(2));
+        filmService.putLike(filmIds.get(3), userIds.get(3));
+
+        assertEquals(List.of(filmIds.get(2), filmIds.get(1)), filmService.getAlsoLiked(filmIds.get(0), 10).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Фильмы, которые лайкают вместе с данным, отобраны или упорядочены неверно!");
+
+        filmService.putLike(filmIds.get(1), userIds.get(1));
+        filmService.putLike(filmIds.get(1), userIds.get(2));
+        filmService.deleteLike(filmIds.get(2), userIds.get(1));
+        List<Long> alsoLiked = filmService.getAlsoLiked(filmIds.get(0), 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(filmIds.get(1), filmIds.get(2)), alsoLiked, "Индекс не обновлен после лайков!");
+        assertEquals(List.of(filmIds.get(1)), filmService.getAlsoLiked(filmIds.get(0), 1).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Количество фильмов не ограничено параметром limit!");
+
+        likeGraph.rebuild();
+        assertEquals(alsoLiked, filmService.getAlsoLiked(filmIds.get(0), 10).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Перестроенный индекс не совпадает с обновленным по лайкам!");
+        assertEquals(List.of(), filmService.getAlsoLiked(filmIds.get(3), 10), "Найдены фильмы без общих лайков!");
+        assertEquals(List.of(filmIds.get(2), filmIds.get(0)),
+                filmStorage.getByIds(List.of(filmIds.get(2), -1L, filmIds.get(0))).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Фильмы загружены не в порядке id или не пропущен несуществующий id!");
+    }
+
+    @Test
+    void recommendFilmsLikedBySimilarUsers() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+        Long userId = userIds.get(0);
+        filmService.putLike(filmIds.get(0), userId);
+        filmService.putLike(filmIds.get(1), userId);
+        filmService.putLike(filmIds.get(2), userId);
+        filmService.putLike(filmIds.get(0), userIds.get(1));
+        filmService.putLike(filmIds.get(1), userIds.get(1));
+        filmService.putLike(filmIds.get(2), userIds.get(1));
+        filmService.putLike(filmIds.get(3), userIds.get(1));
+        filmService.putLike(filmIds.get(0), userIds.get(2));
+        filmService.putLike(filmIds.get(4), userIds.get(2));
+        filmService.putLike(filmIds.get(5), userIds.get(3));
+
+        List<Long> recommendations = filmService.getRecommendations(userId, 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(filmIds.get(3), filmIds.get(4)), recommendations,
+                "Рекомендованные фильмы отобраны или упорядочены неверно!");
+
+        filmService.deleteLike(filmIds.get(1), userId);
+        filmService.deleteLike(filmIds.get(2), userId);
+        filmService.putLike(filmIds.get(4), userId);
+        assertEquals(List.of(filmIds.get(1), filmIds.get(2), filmIds.get(3)),
+                filmService.getRecommendations(userId, 3).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Рекомендации не обновлены после изменения лайков!");
+        assertEquals(List.of(), filmService.getRecommendations(userIds.get(3), 10),
+                "Рекомендованы фильмы без пользователей с похожими лайками!");
+        assertThrows(NoSuitableUnitException.class, () -> filmService.getRecommendations(-1L, 10),
+                "Получены рекомендации для несуществующего пользователя!");
+    }
+
+    @Test
+    void preferSimilarUsersWhenCandidateBucketsOverflow() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 7; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+        Long popularFilmId = filmIds.get(0);
+        Long coLikedFilmId = filmIds.get(5);
+        Long similarFilmId = filmIds.get(6);
+        for (int i = 1; i <= 30; i++) {
+            Long coLikerId = userStorage.create(new User(null, "petrov" + i + "@ya.ru", "Petr", "Petr",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+            filmService.putLike(popularFilmId, coLikerId);
+            filmService.putLike(coLikedFilmId, coLikerId);
+        }
+        Long userId = userStorage.create(new User(null, "ivanov@ya.ru", "Ivan", "Ivan",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        Long similarUserId = userStorage.create(new User(null, "sidorov@ya.ru", "Sidor", "Sidor",
+                LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId();
+        for (int i = 0; i < 5; i++) {
+            filmService.putLike(filmIds.get(i), userId);
+            filmService.putLike(filmIds.get(i), similarUserId);
+        }
+        filmService.putLike(similarFilmId, similarUserId);
+
+        LikeSimilarityIndex index = new LikeSimilarityIndex(3, 2);
+        new LikeGraph(jdbcTemplate, List.of(index)).rebuild();
+        assertArrayEquals(new long[]{similarFilmId, coLikedFilmId}, index.recommend(userId, 2),
+                "Похожий пользователь не попал в кандидаты из-за переполненных корзин соседей по популярному фильму!");
+    }
+
+    @Test
+    void showFilmsLikedByFriendsInFeed() {
+        deleteAllUsersData();
+        deleteAllFilmsData();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+        userService.addFriend(userIds.get(0), userIds.get(1));
+        userService.addFriend(userIds.get(0), userIds.get(2));
+        filmService.putLike(filmIds.get(0), userIds.get(1));
+        filmService.putLike(filmIds.get(1), userIds.get(1));
+        filmService.putLike(filmIds.get(0), userIds.get(2));
+        filmService.putLike(filmIds.get(2), userIds.get(2));
+        filmService.putLike(filmIds.get(3), userIds.get(3));
+
+        List<Long> feed = filmService.getFeed(userIds.get(0), 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(filmIds.get(0), filmIds.get(2), filmIds.get(1)), feed,
+                "Фильмы в ленте отобраны или упорядочены неверно!");
+        assertEquals(List.of(), filmService.getFeed(userIds.get(1), 10), "В ленту попали лайки не друзей!");
+        assertArrayEquals(new long[]{userIds.get(0)}, userStorage.getFollowerIds(userIds.get(1)),
+                "Неверно найдены пользователи, у которых друг в друзьях!");
+        likeGraph.rebuild();
+        assertEquals(feed, filmService.getFeed(userIds.get(0), 10).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Лента после перестроения не совпадает с лентой, собранной по лайкам!");
+
+        filmService.deleteLike(filmIds.get(0), userIds.get(2));
+        assertEquals(List.of(filmIds.get(2), filmIds.get(1), filmIds.get(0)), filmService.getFeed(userIds.get(0), 10)
+                        .stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Снятый лайк учтен в ленте!");
+        userService.deleteFriend(userIds.get(0), userIds.get(2));
+        assertEquals(List.of(filmIds.get(1)), filmService.getFeed(userIds.get(0), 1).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Лайки бывшего друга учтены в ленте или не применен limit!");
+        assertThrows(ValidationException.class, () -> filmService.getFeed(userIds.get(0), 101),
+                "Размер ленты не ограничен!");
+    }
+}
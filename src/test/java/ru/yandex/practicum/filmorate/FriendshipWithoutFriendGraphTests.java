@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"filmorate.friend-graph.enabled=false", "filmorate.feed.strategy=write"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FriendshipWithoutFriendGraphTests {
+    private final UserDbStorage userStorage;
+    private final UserService userService;
+    private final FilmDbStorage filmStorage;
+    private final FilmService filmService;
+    private final LikeGraph likeGraph;
+
+    @Test
+    void getFriendsAndCommonFriendsFromDb() {
+        userStorage.deleteAllUsers();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            ids.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        Long first = ids.get(0);
+        Long second = ids.get(1);
+        Long third = ids.get(2);
+        Long fourth = ids.get(3);
+
+        userService.addFriend(first, third);
+        userService.addFriend(first, fourth);
+        userService.addFriend(second, third);
+        userService.addFriend(fourth, second);
+
+        assertArrayEquals(new long[]{third}, userStorage.getFriendIds(second),
+                "Неподтвержденная заявка в друзья попала в список друзей получателя!");
+        assertEquals(List.of(third), userService.getCommonFriends(first, second).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Список общих друзей сформирован неверно!");
+
+        userService.addFriend(fourth, second);
+        List<User> commonFriends = userService.getCommonFriends(first, second);
+        assertEquals(List.of(third, fourth), commonFriends.stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "Подтвержденная заявка в друзья не учтена в списке общих друзей!");
+        assertEquals(Set.of(second), commonFriends.get(1).getFriendsIds(), "Друзья пользователей загружены неверно!");
+        assertEquals(Map.of(second, 2, third, 0), userService.getMutualFriendCounts(first, List.of(second, third)),
+                "Общие друзья подсчитаны неверно!");
+
+        userService.deleteFriend(first, third);
+        assertEquals(List.of(fourth), userService.getCommonFriends(first, second).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()),
+                "После удаления друга он остался в списке общих друзей!");
+    }
+
+    @Test
+    void keepFriendLinksConsistentWithFriendship() {
+        userStorage.deleteAllUsers();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            ids.add(userStorage.create(new User(null, "petrov" + i + "@ya.ru", "Petr", "Petr",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+
+        Map<Long, Boolean> requests = new HashMap<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 300; step++) {
+            long from = ids.get(random.nextInt(ids.size()));
+            long to = ids.get(random.nextInt(ids.size()));
+            if (from == to) {
+                continue;
+            }
+            if (random.nextInt(4) == 0) {
+                userService.deleteFriend(from, to);
+                requests.remove(from * 1000 + to);
+                requests.remove(to * 1000 + from);
+            } else {
+                userService.addFriend(from, to);
+                requests.put(from * 1000 + to, requests.containsKey(from * 1000 + to));
+            }
+        }
+
+        for (Long id : ids) {
+            Set<Long> expectedFriends = new TreeSet<>();
+            for (Long otherId : ids) {
+                if (requests.containsKey(id * 1000 + otherId) || requests.getOrDefault(otherId * 1000 + id, false)) {
+                    expectedFriends.add(otherId);
+                }
+            }
+            assertEquals(new ArrayList<>(expectedFriends), Arrays.stream(userStorage.getFriendIds(id)).boxed()
+                            .collect(Collectors.toList()),
+                    "Список друзей из friend_links не совпадает с заявками в друзья!");
+            assertEquals(expectedFriends, userStorage.get(id).getFriendsIds(),
+                    "Друзья пользователя загружены неверно!");
+            for (Long otherId : expectedFriends) {
+                assertTrue(Arrays.binarySearch(userStorage.getFollowerIds(otherId), id) >= 0,
+                        "Пользователь не найден среди тех, у кого друг в друзьях!");
+            }
+        }
+    }
+
+    @Test
+    void pushLikesToFriendFeedsOnWrite() {
+        userStorage.deleteAllUsers();
+        filmStorage.deleteAllFilms();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(userStorage.create(new User(null, "sidorov" + i + "@ya.ru", "Sidr", "Sidr",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+        userService.addFriend(userIds.get(0), userIds.get(1));
+        userService.addFriend(userIds.get(0), userIds.get(2));
+        filmService.putLike(filmIds.get(0), userIds.get(1));
+        filmService.putLike(filmIds.get(1), userIds.get(1));
+        filmService.putLike(filmIds.get(1), userIds.get(2));
+        filmService.putLike(filmIds.get(2), userIds.get(0));
+
+        List<Long> feed = filmService.getFeed(userIds.get(0), 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(filmIds.get(1), filmIds.get(0)), feed, "Лента, собранная при записи лайков, неверна!");
+        assertEquals(List.of(), filmService.getFeed(userIds.get(1), 10),
+                "Лайк попал в ленту пользователя, не добавившего лайкнувшего в друзья!");
+        likeGraph.rebuild();
+        assertEquals(feed, filmService.getFeed(userIds.get(0), 10).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Лента после перестроения не совпадает с лентой, собранной по лайкам!");
+
+        filmService.deleteLike(filmIds.get(1), userIds.get(2));
+        assertEquals(List.of(filmIds.get(1), filmIds.get(0)), filmService.getFeed(userIds.get(0), 10).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()),
+                "Снятый лайк учтен в ленте!");
+    }
+}
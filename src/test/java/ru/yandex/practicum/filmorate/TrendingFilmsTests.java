@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.TrendingLikes;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class TrendingFilmsTests {
+    private final UserDbStorage userStorage;
+    private final FilmDbStorage filmStorage;
+    private final FilmService filmService;
+    private final TrendingLikes trendingLikes;
+    private final TestClock clock;
+
+    @Test
+    void countLikesInSlidingWindows() {
+        filmStorage.deleteAllFilms();
+        userStorage.deleteAllUsers();
+        trendingLikes.rebuild();
+        clock.set(Instant.parse("2023-04-01T10:00:00Z"));
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(userStorage.create(new User(null, "ivanov" + i + "@ya.ru", "Ivan", "Ivan",
+                    LocalDate.of(2010, 01, 01), new HashSet<>(), new HashSet<>())).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Scary Movie " + i, "Amecican comedy movie from 2000",
+                    null, new Mpa(3, "PG-13"), LocalDate.of(2000, 01, 01), 100, null)).getId());
+        }
+
+        filmService.putLike(filmIds.get(0), userIds.get(0));
+        filmService.putLike(filmIds.get(0), userIds.get(1));
+        clock.advance(Duration.ofHours(2));
+        filmService.putLike(filmIds.get(1), userIds.get(0));
+        clock.advance(Duration.ofMinutes(30));
+        assertEquals(List.of(filmIds.get(1)), getTrendingIds("1h"), "Неверные тренды за час!");
+        assertEquals(List.of(filmIds.get(0), filmIds.get(1)), getTrendingIds("24h"), "Неверные тренды за сутки!");
+
+        clock.advance(Duration.ofHours(23));
+        trendingLikes.roll();
+        assertEquals(List.of(filmIds.get(1)), getTrendingIds("24h"), "Лайк старше суток остался в окне суток!");
+        assertEquals(List.of(), getTrendingIds("1h"), "Лайк старше часа остался в окне часа!");
+
+        for (Long userId : userIds) {
+            filmService.putLike(filmIds.get(2), userId);
+        }
+        filmService.deleteLike(filmIds.get(0), userIds.get(0));
+        List<Long> weekTrending = getTrendingIds("7d");
+        assertEquals(List.of(filmIds.get(2), filmIds.get(0), filmIds.get(1)), weekTrending,
+                "Неверные тренды за неделю после лайков и снятия лайка!");
+        trendingLikes.rebuild();
+        assertEquals(weekTrending, getTrendingIds("7d"), "Счетчики, загруженные из БД, не совпадают с обновленными!");
+
+        clock.advance(Duration.ofDays(8));
+        trendingLikes.roll();
+        assertEquals(List.of(), getTrendingIds("7d"), "Лайки старше недели остались в окне недели!");
+        assertThrows(ValidationException.class, () -> filmService.getTrending("2h", 10),
+                "Принято неподдерживаемое окно!");
+    }
+
+    private List<Long> getTrendingIds(String window) {
+        return filmService.getTrending(window, 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
+    @TestConfiguration
+    static class TestClockConfiguration {
+        @Bean
+        @Primary
+        TestClock testClock() {
+            return new TestClock();
+        }
+    }
+
+    static class TestClock extends Clock {
+        private volatile Instant instant = Instant.parse("2023-04-01T00:00:00Z");
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.yandex.practicum.filmorate.storage.MembershipFilters;
+import ru.yandex.practicum.filmorate.storage.film.FanOutOnReadFeed;
+import ru.yandex.practicum.filmorate.storage.film.FanOutOnWriteFeed;
+import ru.yandex.practicum.filmorate.storage.film.FriendFeed;
+import ru.yandex.practicum.filmorate.storage.film.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Сравнение стратегий ленты друзей (filmorate.feed.strategy) при росте числа друзей и числа лайков
+ * на одно чтение ленты. Каждый цикл - likesPerRead лайков случайных пользователей и одно чтение ленты.
+ * Не является тестом; запуск из IDE или после mvn test-compile:
+ * java -cp target/classes:target/test-classes:&lt;classpath из mvn dependency:build-classpath&gt;
+ * ru.yandex.practicum.filmorate.benchmark.FeedBenchmark
+ */
+public class FeedBenchmark {
+    private static final int USERS = 5_000;
+    private static final int FILMS = 5_000;
+    private static final int INITIAL_LIKES_PER_USER = 20;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 500;
+    private static final int FEED_SIZE = 20;
+    private static final int[] FRIEND_COUNTS = {10, 100, 1000};
+    private static final int[] LIKES_PER_READ = {1, 10, 100};
+    private static long checksum;
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %10s %9s %10s %12s %10s%n",
+                "друзей", "лайков/чт", "стратегия", "мкс/лайк", "мкс/чтение", "мкс/цикл");
+        for (int friendCount : FRIEND_COUNTS) {
+            JdbcTemplate jdbcTemplate = createDatabase(friendCount);
+            FriendGraph friendGraph = new FriendGraph(jdbcTemplate);
+            friendGraph.rebuild();
+            UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, Optional.of(friendGraph),
+                    new MembershipFilters(jdbcTemplate, USERS, 0.01));
+            for (int likesPerRead : LIKES_PER_READ) {
+                run(friendCount, likesPerRead, "read", new FanOutOnReadFeed(jdbcTemplate), userStorage, jdbcTemplate);
+                run(friendCount, likesPerRead, "write", new FanOutOnWriteFeed(jdbcTemplate, userStorage),
+                        userStorage, jdbcTemplate);
+            }
+        }
+        System.out.println("Контрольная сумма: " + checksum);
+    }
+
+    private static void run(int friendCount, int likesPerRead, String strategy, FriendFeed feed,
+                            UserDbStorage userStorage, JdbcTemplate jdbcTemplate) {
+        LikeGraph likeGraph = new LikeGraph(jdbcTemplate, List.of(feed));
+        likeGraph.rebuild();
+        Random random = new Random(42);
+        measure(likeGraph, feed, userStorage, random, likesPerRead, WARMUP_ROUNDS);
+        long[] times = measure(likeGraph, feed, userStorage, random, likesPerRead, ROUNDS);
+        System.out.printf("%8d %10d %9s %10.2f %12.2f %10.2f%n", friendCount, likesPerRead, strategy,
+                times[0] / 1000.0 / ROUNDS / likesPerRead, times[1] / 1000.0 / ROUNDS,
+                (times[0] + times[1]) / 1000.0 / ROUNDS);
+    }
+
+    /**
+     * Возвращает суммарное время лайков и чтений в наносекундах.
+     */
+    private static long[] measure(LikeGraph likeGraph, FriendFeed feed, UserDbStorage userStorage, Random random,
+                                  int likesPerRead, int rounds) {
+        long likeTime = 0;
+        long readTime = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < likesPerRead; i++) {
+                likeGraph.addLike(1 + random.nextInt(FILMS), 1 + random.nextInt(USERS));
+            }
+            long liked = System.nanoTime();
+            long userId = 1 + random.nextInt(USERS);
+            checksum += feed.getFeed(userId, userStorage.getFriendIds(userId), FEED_SIZE).length;
+            readTime += System.nanoTime() - liked;
+            likeTime += liked - start;
+        }
+        return new long[]{likeTime, readTime};
+    }
+
+    /**
+     * Заявки в друзья сразу подтверждены, каждый пользователь отправляет friendCount / 2 заявок,
+     * поэтому друзей у пользователя в среднем friendCount.
+     */
+    private static JdbcTemplate createDatabase(int friendCount) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:feed" + friendCount + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE friendship (friend_one_id INTEGER, friend_two_id INTEGER, "
+                + "friendship_status BOOLEAN);");
+        jdbcTemplate.execute("CREATE TABLE friend_links (user_id INTEGER, friend_id INTEGER);");
+        jdbcTemplate.execute("CREATE TABLE user_likes (user_likes_id INTEGER AUTO_INCREMENT PRIMARY KEY, "
+                + "film_id INTEGER, user_id INTEGER);");
+
+        Random random = new Random(1);
+        List<Object[]> friendships = new ArrayList<>();
+        List<Object[]> likes = new ArrayList<>();
+        for (int userId = 1; userId <= USERS; userId++) {
+            for (int i = 0; i < friendCount / 2; i++) {
+                int friendId = 1 + random.nextInt(USERS);
+                if (friendId != userId) {
+                    friendships.add(new Object[]{userId, friendId});
+                }
+            }
+            int firstFilm = random.nextInt(FILMS);
+            for (int i = 0; i < INITIAL_LIKES_PER_USER; i++) {
+                likes.add(new Object[]{1 + (firstFilm + i * 97) % FILMS, userId});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO friendship VALUES (?, ?, TRUE);", friendships);
+        jdbcTemplate.update("INSERT INTO friend_links SELECT DISTINCT friend_one_id, friend_two_id FROM friendship "
+                + "UNION SELECT friend_two_id, friend_one_id FROM friendship;");
+        jdbcTemplate.batchUpdate("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?);", likes);
+        return jdbcTemplate;
+    }
+}
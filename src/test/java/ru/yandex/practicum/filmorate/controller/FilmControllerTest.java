@@ -233,7 +233,7 @@ class FilmControllerTest {
         filmController.putLike(film3.getId(), user3.getId());
         filmController.putLike(film3.getId(), user2.getId());
 
-        List<Film> tenMostLikedFilms = filmController.getMostLikedFilms(10);
+        List<Film> tenMostLikedFilms = filmController.getMostLikedFilms(10, null, null, null);
         assertEquals(tenMostLikedFilms.get(0), film1,
                 "Фильмы в списке самых популярных неправильно отсортированы");
         assertEquals(tenMostLikedFilms.get(1), film3,
@@ -241,7 +241,10 @@ class FilmControllerTest {
         assertEquals(tenMostLikedFilms.get(2), film2,
                 "Фильмы в списке самых популярных неправильно отсортированы");
 
-        List<Film> mostLikedFilm = filmController.getMostLikedFilms(1);
+        assertEquals(2, filmController.getMostLikedFilms(2, null, null, null).size(),
+                "Список самых популярных фильмов короче запрошенного");
+
+        List<Film> mostLikedFilm = filmController.getMostLikedFilms(1, null, null, null);
         assertEquals(mostLikedFilm.get(0), film1,
                 "Фильмы в списке самых популярных неправильно отсортированы");
     }